@@ -12,8 +12,6 @@ repositories {
 dependencies {
     api("org.jetbrains:annotations:26.0.2")
     implementation("it.unimi.dsi:fastutil:8.5.16")
-    implementation("space.vectrix.flare:flare:2.0.1")
-    implementation("space.vectrix.flare:flare-fastutil:2.0.1")
     implementation("org.jctools:jctools-core:4.0.5")
 }
 
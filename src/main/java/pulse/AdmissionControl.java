@@ -0,0 +1,223 @@
+package pulse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Protects a server from more calls than it can handle, rejected calls fail fast with an {@link OverloadedException}.
+ * <p>
+ * Calls are admitted up to a concurrency limit that adapts to their latency like TCP Vegas: while latency stays
+ * close to the lowest one seen the limit grows, once calls start to queue it shrinks.
+ * <p>
+ * Admitted calls that waited longer than the target before a thread picked them up are shed like in CoDel, once waiting
+ * stood above the target for a whole interval, then ever more often by the square root of the calls shed until waiting
+ * falls below the target. A short burst is absorbed, a standing queue is not.
+ *
+ * @see PulseServer#setAdmissionControl(AdmissionControl)
+ * @see <a href="https://queue.acm.org/detail.cfm?id=2209336">Controlling Queue Delay</a>
+ */
+public final class AdmissionControl {
+    public static final int DEFAULT_INITIAL_LIMIT = 64, DEFAULT_MIN_LIMIT = 8, DEFAULT_MAX_LIMIT = 4096;
+    public static final long DEFAULT_TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    public static final long DEFAULT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // the lowest latency is measured anew after this many samples per unit of limit, it may have changed
+    private static final int PROBE_MULTIPLIER = 30;
+    // shedding that resumes within this many intervals of the last shed call starts near its last rate
+    private static final int RESUME_INTERVALS = 16;
+
+    private final int minLimit, maxLimit;
+    private final long targetNanos, intervalNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    private final LongAdder rejected = new LongAdder(), shed = new LongAdder();
+
+    // guarded by lock, samples arriving while it is held are skipped
+    private final ReentrantLock lock = new ReentrantLock();
+    private double estimate;
+    private long noLoadNanos = Long.MAX_VALUE;
+    private long samples;
+
+    // guarded by shedLock, read without it only to let calls below the target pass
+    private final ReentrantLock shedLock = new ReentrantLock();
+    // when the queue delay went above the target, zero below
+    private volatile long firstAboveTarget;
+    private boolean shedding;
+    private long nextShed;
+    private int shedCount;
+
+    public AdmissionControl() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_TARGET_NANOS, DEFAULT_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param target   the queue delay to keep calls under
+     * @param interval how long the queue delay may stay above the target before calls are shed
+     */
+    public AdmissionControl(int initialLimit, int minLimit, int maxLimit, long target, long interval, TimeUnit unit) {
+        if (minLimit < 1) throw new IllegalArgumentException("minLimit < 1");
+        if (maxLimit < minLimit) throw new IllegalArgumentException("maxLimit < minLimit");
+        if (initialLimit < minLimit || initialLimit > maxLimit)
+            throw new IllegalArgumentException("initialLimit not in [minLimit, maxLimit]");
+        if (target <= 0 || interval <= 0) throw new IllegalArgumentException("target and interval must be positive");
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetNanos = unit.toNanos(target);
+        this.intervalNanos = unit.toNanos(interval);
+        this.limit = initialLimit;
+        this.estimate = initialLimit;
+    }
+
+    /**
+     * A batch takes a permit per call. One larger than the limit is admitted only while nothing else is in flight,
+     * it would never be otherwise.
+     *
+     * @return whether the call may run, it must end with {@link #completed}, {@link #cancelled} or {@link #shed}
+     * with the same permits
+     */
+    boolean tryAcquire(int permits) {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current > 0 && current + permits > limit) {
+                rejected.add(permits);
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + permits));
+        return true;
+    }
+
+    /**
+     * @param queueNanos how long an admitted call waited for a thread
+     * @return whether to shed it instead of running it
+     */
+    boolean shouldShed(long queueNanos) {
+        if (queueNanos < targetNanos && firstAboveTarget == 0) return false;
+
+        long now = System.nanoTime();
+        shedLock.lock();
+        try {
+            if (queueNanos < targetNanos) {
+                firstAboveTarget = 0;
+                shedding = false;
+                return false;
+            }
+            if (firstAboveTarget == 0) {
+                // zero is taken for below the target
+                firstAboveTarget = now | 1;
+                return false;
+            }
+
+            if (!shedding) {
+                if (now - firstAboveTarget < intervalNanos) return false;
+                shedding = true;
+                shedCount = shedCount > 2 && now - nextShed < RESUME_INTERVALS * intervalNanos ? shedCount - 2 : 1;
+                nextShed = controlLaw(now);
+                return true;
+            }
+            if (now - nextShed < 0) return false;
+
+            shedCount++;
+            nextShed = controlLaw(nextShed);
+            return true;
+        } finally {
+            shedLock.unlock();
+        }
+    }
+
+    /**
+     * Sheds get closer while the queue keeps standing, the control law of CoDel.
+     */
+    private long controlLaw(long from) {
+        return from + (long) (intervalNanos / Math.sqrt(shedCount));
+    }
+
+    void completed(long latencyNanos, int permits) {
+        int current = inFlight.getAndAdd(-permits);
+        if (!lock.tryLock()) return;
+        try {
+            update(latencyNanos, current);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void cancelled(int permits) {
+        inFlight.addAndGet(-permits);
+    }
+
+    void shed(int permits) {
+        inFlight.addAndGet(-permits);
+        shed.add(permits);
+
+        lock.lock();
+        try {
+            setEstimate(estimate - step(estimate));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long latencyNanos, int inFlight) {
+        if (latencyNanos <= 0) return;
+
+        if (++samples >= PROBE_MULTIPLIER * (long) limit) {
+            samples = 0;
+            noLoadNanos = latencyNanos;
+            return;
+        }
+        if (latencyNanos < noLoadNanos) {
+            noLoadNanos = latencyNanos;
+            return;
+        }
+
+        // an idle server says nothing about its limit
+        if (inFlight * 2 < estimate) return;
+
+        // how many calls queue up behind the ones being worked on
+        double queue = Math.ceil(estimate * (1 - (double) noLoadNanos / latencyNanos));
+        double step = step(estimate), alpha = 3 * step, beta = 6 * step;
+        if (queue <= step) {
+            setEstimate(estimate + beta);
+        } else if (queue < alpha) {
+            setEstimate(estimate + step);
+        } else if (queue > beta) {
+            setEstimate(estimate - step);
+        }
+    }
+
+    private static double step(double estimate) {
+        return Math.max(1, Math.log10(estimate));
+    }
+
+    private void setEstimate(double estimate) {
+        this.estimate = Math.clamp(estimate, minLimit, maxLimit);
+        this.limit = (int) this.estimate;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return how many calls were rejected by the concurrency limit
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return how many admitted calls were shed because they waited too long
+     */
+    public long getShed() {
+        return shed.sum();
+    }
+}
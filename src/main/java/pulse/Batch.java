@@ -0,0 +1,168 @@
+package pulse;
+
+import org.jetbrains.annotations.Nullable;
+import pulse.network.Buffer;
+import pulse.network.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Calls sent together in a single frame, to any of the server's services. The server runs them in parallel
+ * and answers all of them in a single frame, each with its own result or failure.
+ * <pre>{@code
+ * var batch = client.batch();
+ * var sum = batch.add(() -> mathService.sumAsync(1, 2));
+ * var user = batch.add(() -> userService.findAsync(42));
+ * batch.send();
+ * }</pre>
+ *
+ * @see PulseClient#batch()
+ */
+public final class Batch {
+    /**
+     * Marks a batch where requests have their service id, exported services cannot use it.
+     */
+    static final int SERVICE_ID = -1;
+    static final int MAX_SIZE = 1 << 16;
+
+    private static final ThreadLocal<@Nullable Batch> RECORDING = new ThreadLocal<>();
+
+    private final PulseClient client;
+    private final ArrayList<Item<?>> items = new ArrayList<>();
+    private boolean sent;
+
+    Batch(PulseClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Records the call that {@code call} makes to an asynchronous method of one of the client's services,
+     * instead of sending it.
+     *
+     * @return the future of the call, completed once the batch is answered
+     * @throws IllegalStateException if {@code call} makes a blocking or one-way call, which is not sent
+     */
+    public <T> CompletableFuture<T> add(Supplier<? extends CompletionStage<T>> call) {
+        int size = items.size();
+        RECORDING.set(this);
+        final CompletionStage<T> stage;
+        try {
+            stage = call.get();
+        } finally {
+            RECORDING.remove();
+        }
+
+        if (items.size() != size + 1)
+            throw new IllegalArgumentException("Must make exactly one asynchronous call, made " + (items.size() - size));
+        return stage.toCompletableFuture();
+    }
+
+    /**
+     * Records a call like {@link PulseClient#call(Buffer.Writable, Type)}.
+     */
+    public <T> CompletableFuture<T> call(Buffer.Writable payload, @Nullable Type<T> type) {
+        if (sent) throw new IllegalStateException("Already sent");
+        if (items.size() == MAX_SIZE) throw new IllegalStateException("Batch is full: " + MAX_SIZE);
+
+        var item = new Item<>(payload, type, new CompletableFuture<>());
+        items.add(item);
+        return item.future;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Sends the batch with the client's default timeout.
+     *
+     * @return completes once all calls of the batch completed
+     */
+    public CompletableFuture<Void> send() {
+        return send(0, TimeUnit.NANOSECONDS);
+    }
+
+    public CompletableFuture<Void> send(long timeout, TimeUnit unit) {
+        if (sent) throw new IllegalStateException("Already sent");
+        sent = true;
+
+        final List<Item<?>> items = List.copyOf(this.items);
+        if (items.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        Buffer.Writable payload = buffer -> {
+            buffer.writeVarInt(SERVICE_ID);
+            buffer.writeVarInt(items.size());
+            for (var item : items) {
+                // length prefixed, so that the server can tell the calls apart without decoding them
+                long start = buffer.getWriteIndex();
+                buffer.writeInt(0);
+                item.payload.writeSelfInto(buffer);
+                buffer.setInt(start, (int) (buffer.getWriteIndex() - start - Integer.BYTES));
+            }
+        };
+
+        // never hedged, a batch may hold calls that are not idempotent
+        return client.send(payload, unit.toNanos(timeout), false).handle((buffer, e) -> {
+            if (e != null) {
+                for (var item : items) item.future.completeExceptionally(e);
+                return null;
+            }
+
+            try {
+                complete(items, buffer);
+            } catch (Throwable t) {
+                // a malformed response leaves the calls after the failing one without a result
+                for (var item : items) item.future.completeExceptionally(t);
+            } finally {
+                buffer.release();
+            }
+            return null;
+        });
+    }
+
+    private static void complete(List<Item<?>> items, Buffer buffer) {
+        int count = buffer.readVarInt();
+        if (count != items.size()) {
+            var e = new IllegalStateException("Expected " + items.size() + " results, got " + count);
+            for (var item : items) item.future.completeExceptionally(e);
+            return;
+        }
+
+        for (var item : items) {
+            // is successful?
+            if (buffer.readBoolean()) {
+                int length = buffer.readInt();
+                var slice = buffer.slice(buffer.getReadIndex(), length);
+                slice.setWriteIndex(length);
+                buffer.setReadIndex(buffer.getReadIndex() + length);
+
+                item.complete(slice);
+            } else {
+                item.future.completeExceptionally(new RemoteRuntimeException(buffer.readUtf8()));
+            }
+        }
+    }
+
+    /**
+     * @return the batch recording calls of {@code client} on this thread
+     */
+    static @Nullable Batch recording(PulseClient client) {
+        var batch = RECORDING.get();
+        return batch != null && batch.client == client ? batch : null;
+    }
+
+    private record Item<T>(Buffer.Writable payload, @Nullable Type<T> type, CompletableFuture<T> future) {
+        void complete(Buffer buffer) {
+            try {
+                future.complete(type == null ? null : type.read(buffer));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package pulse;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets the client answer calls of an idempotent method from its {@link NearCache} for the given time
+ * after a response arrived, keyed by the encoded arguments. Without a near cache the calls are sent as usual.
+ *
+ * @see PulseClient#setNearCache(NearCache)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Cached {
+    /**
+     * @return how long a response stays valid
+     */
+    long value();
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
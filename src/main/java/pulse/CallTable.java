@@ -0,0 +1,129 @@
+package pulse;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Fixed-capacity table of the calls awaiting a response, indexed by their id.
+ * <p>
+ * An id holds the index of its slot in the low bits and the generation of the slot in the high bits,
+ * so that a late or duplicate response for a slot taken by a newer call is rejected. Free slots are kept
+ * in striped stacks, a caller takes from the stripe of its thread and a slot returns to its home stripe,
+ * so neither side contends on a shared counter. A full table rejects new calls instead of growing.
+ */
+final class CallTable<T> {
+    /**
+     * Never the id of a call, it marks one-way calls on the wire.
+     */
+    static final int NO_CALLBACK = -1;
+
+    private static final int EMPTY = -1;
+    // heads on their own cache lines, 8 longs apart
+    private static final int HEAD_STRIDE = 8;
+
+    private final AtomicReferenceArray<@Nullable T> slots;
+    // owned by whoever holds the slot, published by the slot store
+    private final int[] generations;
+    // links of the free stacks, written before the push that publishes them
+    private final int[] nextFree;
+    // tag << 32 | index of the top, the tag prevents ABA
+    private final AtomicLongArray heads;
+
+    private final int indexBits, indexMask, stripeMask;
+
+    CallTable(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1 || capacity > 1 << 24)
+            throw new IllegalArgumentException("capacity must be a power of two up to 2^24");
+
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.generations = new int[capacity];
+        this.nextFree = new int[capacity];
+        this.indexBits = Integer.numberOfTrailingZeros(capacity);
+        this.indexMask = capacity - 1;
+
+        int stripes = Math.min(capacity, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+        this.stripeMask = stripes - 1;
+        this.heads = new AtomicLongArray(stripes * HEAD_STRIDE);
+        for (int stripe = 0; stripe < stripes; stripe++) heads.set(stripe * HEAD_STRIDE, EMPTY & 0xFFFFFFFFL);
+        for (int index = capacity - 1; index >= 0; index--) push(index);
+    }
+
+    /**
+     * @return the id of the call
+     * @throws RejectedExecutionException if as many calls as the capacity are in flight
+     */
+    int add(T value) {
+        int home = (int) Thread.currentThread().threadId() & stripeMask;
+        for (int i = 0; i <= stripeMask; i++) {
+            int index = pop((home + i) & stripeMask);
+            if (index == EMPTY) continue;
+
+            int generation = generations[index] + 1;
+            if ((generation << indexBits | index) == NO_CALLBACK) generation++;
+            generations[index] = generation;
+            slots.setRelease(index, value);
+            return generation << indexBits | index;
+        }
+        throw new RejectedExecutionException("Too many calls in flight: " + capacity());
+    }
+
+    /**
+     * @return the call of the id, or {@code null} if it was removed already
+     */
+    @Nullable T remove(int id) {
+        int index = id & indexMask;
+        var value = slots.getAcquire(index);
+        if (value == null) return null;
+        // the generation is written before the slot, so it is at least as new as the value
+        if (generations[index] << indexBits != (id & ~indexMask)) return null;
+        if (!slots.compareAndSet(index, value, null)) return null;
+
+        push(index);
+        return value;
+    }
+
+    /**
+     * Removes the calls matching {@code filter}, passing each to {@code action}.
+     */
+    void removeIf(Predicate<? super T> filter, Consumer<? super T> action) {
+        for (int index = 0; index <= indexMask; index++) {
+            var value = slots.get(index);
+            if (value == null || !filter.test(value) || !slots.compareAndSet(index, value, null)) continue;
+
+            push(index);
+            action.accept(value);
+        }
+    }
+
+    int capacity() {
+        return indexMask + 1;
+    }
+
+    private int pop(int stripe) {
+        int offset = stripe * HEAD_STRIDE;
+        while (true) {
+            long head = heads.get(offset);
+            int index = (int) head;
+            if (index == EMPTY) return EMPTY;
+
+            long next = (head >>> 32) + 1 << 32 | nextFree[index] & 0xFFFFFFFFL;
+            if (heads.compareAndSet(offset, head, next)) return index;
+        }
+    }
+
+    private void push(int index) {
+        int offset = (index & stripeMask) * HEAD_STRIDE;
+        while (true) {
+            long head = heads.get(offset);
+            nextFree[index] = (int) head;
+
+            long next = (head >>> 32) + 1 << 32 | index & 0xFFFFFFFFL;
+            if (heads.compareAndSet(offset, head, next)) return;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package pulse;
 
+import org.jetbrains.annotations.Nullable;
 import pulse.network.Buffer;
 import pulse.network.BuiltinType;
+import pulse.network.Connection;
 import pulse.network.Type;
 
 import java.io.IOException;
@@ -13,13 +15,17 @@ import java.lang.constant.*;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static java.util.Map.entry;
@@ -29,6 +35,9 @@ public final class CodeGen {
     public static final String GENERATED_CLIENT_SUFFIX = "PulseGeneratedClient";
     public static final String GENERATED_SERVER_SUFFIX = "PulseGeneratedServer";
 
+    // frame header, callback id, deadline, service and method id
+    private static final int SYNC_CALL_OVERHEAD = Connection.PACKET_HEADER_SIZE + Integer.BYTES + 3 * 5;
+
     record SerializerField(String name, Class<?> targetType) {
     }
 
@@ -91,14 +100,28 @@ public final class CodeGen {
                     .of(ConstantDescs.CD_double);
             var bufferWriteDoubleMethodDesc = MethodTypeDesc
                     .of(ConstantDescs.CD_void, ConstantDescs.CD_double);
+            var bufferReleaseMethodDesc = MethodTypeDesc
+                    .of(ConstantDescs.CD_void);
+
+            var syncCallClassDesc = ClassDesc.of(SyncCall.class.getName());
+            var clientSyncCallMethodDesc = MethodTypeDesc.of(syncCallClassDesc, ConstantDescs.CD_long);
+            var syncCallBufferMethodDesc = MethodTypeDesc.of(bufferClassDesc);
+            var syncCallAwaitMethodDesc = MethodTypeDesc.of(bufferClassDesc);
+
+            var clientCallOneWayMethodDesc = MethodTypeDesc.of(ConstantDescs.CD_void, bufferWritableClassDesc);
 
             var futureClassDesc = ClassDesc.of(Future.class.getName());
-            var clientCallMethodDesc = MethodTypeDesc.of(futureClassDesc, bufferWritableClassDesc);
+            var clientCallMethodDesc = MethodTypeDesc.of(futureClassDesc, bufferWritableClassDesc, ConstantDescs.CD_long);
+
+            var networkTypeClassDesc = ClassDesc.of(Type.class.getName());
+            var completableFutureClassDesc = ClassDesc.of(CompletableFuture.class.getName());
+            var clientCallAsyncMethodDesc = MethodTypeDesc.of(completableFutureClassDesc, bufferWritableClassDesc, networkTypeClassDesc, ConstantDescs.CD_long);
+            var clientCallCachedMethodDesc = MethodTypeDesc.of(futureClassDesc, bufferWritableClassDesc, ConstantDescs.CD_long, ConstantDescs.CD_long);
+            var clientCallCachedAsyncMethodDesc = MethodTypeDesc.of(completableFutureClassDesc, bufferWritableClassDesc, networkTypeClassDesc, ConstantDescs.CD_long, ConstantDescs.CD_long);
 
             var mapClassDesc = ClassDesc.of(Map.class.getName());
             var mapGetMethodDesc = MethodTypeDesc.of(ConstantDescs.CD_Object, ConstantDescs.CD_Object);
 
-            var networkTypeClassDesc = ClassDesc.of(Type.class.getName());
             var networkTypeClassDescStr = networkTypeClassDesc.descriptorString();
             var networkTypeClassDescStrForSignature = networkTypeClassDescStr.substring(0, networkTypeClassDescStr.length() - 1);
             var networkTypeReadMethodDesc = MethodTypeDesc.of(ConstantDescs.CD_Object, bufferClassDesc);
@@ -132,8 +155,7 @@ public final class CodeGen {
                     entry(String.class, BuiltinType.StringUtf8Type.class)
             );
 
-            Method[] declaredMethods = proto.getDeclaredMethods();
-            Arrays.sort(declaredMethods, Comparator.comparing(Method::getName));
+            Method[] declaredMethods = methods(proto);
 
             for (int i = 0; i < declaredMethods.length; i++) {
                 var declaredMethod = declaredMethods[i];
@@ -145,16 +167,39 @@ public final class CodeGen {
                 var returnTypeDescStr = returnType.descriptorString();
                 var returnTypeClassDesc = ClassDesc.ofDescriptor(returnTypeDescStr);
 
-                if (!returnTypeClassDesc.isPrimitive()) {
-                    var typeName = returnTypeClassDesc.displayName().replace("[]", "Array");
+                // futures are completed with the decoded value instead of blocking the caller
+                var isAsync = isAsync(returnType);
+                // queued without waiting for a response, none is sent
+                var isOneWay = isOneWay(declaredMethod);
+                // shares the request of concurrent calls with identical arguments
+                var isSingleFlight = declaredMethod.isAnnotationPresent(SingleFlight.class);
+                if (isOneWay && isSingleFlight)
+                    throw new IllegalArgumentException("One-way methods cannot be single-flight: " + declaredMethod);
+                // answered from the near cache while a response is fresh
+                var cached = declaredMethod.getAnnotation(Cached.class);
+                if (isOneWay && cached != null)
+                    throw new IllegalArgumentException("One-way methods cannot be cached: " + declaredMethod);
+                long ttlNanos = cached == null ? 0 : cached.unit().toNanos(cached.value());
+                // may be hedged, single-flight and cached calls are hedged by the client already
+                var isIdempotent = declaredMethod.isAnnotationPresent(Idempotent.class);
+                if (isOneWay && isIdempotent)
+                    throw new IllegalArgumentException("One-way methods cannot be hedged: " + declaredMethod);
+                var callMethodName = cached != null ? "callCached" : isSingleFlight ? "callSingleFlight"
+                        : isIdempotent ? "callIdempotent" : "call";
+                var valueType = isAsync ? asyncValueType(declaredMethod) : returnType;
+                var valueTypeDescStr = valueType.descriptorString();
+                var valueTypeClassDesc = ClassDesc.ofDescriptor(valueTypeDescStr);
+
+                if (!valueTypeClassDesc.isPrimitive() && valueType != Void.class) {
+                    var typeName = valueTypeClassDesc.displayName().replace("[]", "Array");
                     var fieldName = typeName + '$' + "ser" + nextFieldId++;
-                    classDescToSerializerFieldMap.computeIfAbsent(returnTypeClassDesc, _ -> {
+                    classDescToSerializerFieldMap.computeIfAbsent(valueTypeClassDesc, _ -> {
                         var signature = SignatureAttribute.of(Signature.parseFrom(
-                                String.format("%s<%s>;", networkTypeClassDescStrForSignature, returnTypeDescStr)
+                                String.format("%s<%s>;", networkTypeClassDescStrForSignature, valueTypeDescStr)
                         ));
                         classBuilder.withField(fieldName, networkTypeClassDesc,
                                 fieldBuilder -> fieldBuilder.withFlags(ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL).with(signature));
-                        return new SerializerField(fieldName, returnType);
+                        return new SerializerField(fieldName, valueType);
                     });
                 }
 
@@ -291,6 +336,14 @@ public final class CodeGen {
                 var declaredMethodDesc = MethodTypeDesc.of(returnTypeClassDesc, parametersClassDescs);
                 int newModifiers = (declaredMethod.getModifiers() & ~Modifier.ABSTRACT) | Modifier.PUBLIC;
 
+                // zero leaves the deadline to the client's default
+                var timeout = declaredMethod.getAnnotation(Timeout.class);
+                long timeoutNanos = timeout == null ? 0 : Math.max(1, timeout.unit().toNanos(timeout.value()));
+
+                // primitive arguments always fit into a single frame, such calls take the allocation-free path
+                var isSync = !isAsync && !isOneWay && !isSingleFlight && cached == null && parametersClassDescs.stream().allMatch(ClassDesc::isPrimitive)
+                        && SYNC_CALL_OVERHEAD + (long) Long.BYTES * parametersClassDescs.size() <= Connection.MAX_PACKET_SIZE;
+
                 classBuilder.withMethodBody(declaredMethod.getName(), declaredMethodDesc, newModifiers, codeBuilder -> {
                     var invocationParams = new ArrayList<>(parametersClassDescs);
 
@@ -314,116 +367,196 @@ public final class CodeGen {
                             bufferWriteSelfIntoMethodDesc
                     );
 
-                    codeBuilder.aload(0);
-
-                    int slot = 1; // 0 = this
+                    int callSlot = 1; // after the parameters
                     for (var parameterClassDesc : parametersClassDescs) {
-                        switch (parameterClassDesc.descriptorString()) {
-                            case "I", "B", "S", "C", "Z" -> {
-                                codeBuilder.iload(slot);
-                                slot += 1;
-                            }
-                            case "F" -> {
-                                codeBuilder.fload(slot);
-                                slot += 1;
-                            }
+                        var descStr = parameterClassDesc.descriptorString();
+                        callSlot += "J".equals(descStr) || "D".equals(descStr) ? 2 : 1;
+                    }
 
-                            case "J" -> {
-                                codeBuilder.lload(slot);
-                                slot += 2;
-                            }
-                            case "D" -> {
-                                codeBuilder.dload(slot);
-                                slot += 2;
-                            }
+                    Runnable loadArguments = () -> {
+                        codeBuilder.aload(0);
 
-                            default -> {
-                                codeBuilder.aload(slot);
-                                slot += 1;
+                        int slot = 1; // 0 = this
+                        for (var parameterClassDesc : parametersClassDescs) {
+                            switch (parameterClassDesc.descriptorString()) {
+                                case "I", "B", "S", "C", "Z" -> {
+                                    codeBuilder.iload(slot);
+                                    slot += 1;
+                                }
+                                case "F" -> {
+                                    codeBuilder.fload(slot);
+                                    slot += 1;
+                                }
+
+                                case "J" -> {
+                                    codeBuilder.lload(slot);
+                                    slot += 2;
+                                }
+                                case "D" -> {
+                                    codeBuilder.dload(slot);
+                                    slot += 2;
+                                }
+
+                                default -> {
+                                    codeBuilder.aload(slot);
+                                    slot += 1;
+                                }
                             }
                         }
+                    };
+
+                    var decode = codeBuilder.newLabel();
+
+                    if (isSync) {
+                        var hedged = codeBuilder.newLabel();
+
+                        // hedged calls need a future per call, they take the regular path
+                        if (isIdempotent) {
+                            codeBuilder
+                                    .aload(0)
+                                    .getfield(generatedClassDesc, "client", pulseClientClassDesc)
+                                    .invokevirtual(pulseClientClassDesc, "isHedging", MethodTypeDesc.of(ConstantDescs.CD_boolean))
+                                    .ifne(hedged);
+                        }
+
+                        codeBuilder
+                                .aload(0)
+                                .getfield(generatedClassDesc, "client", pulseClientClassDesc)
+                                .loadConstant(timeoutNanos)
+                                .invokevirtual(pulseClientClassDesc, "syncCall", clientSyncCallMethodDesc)
+                                .astore(callSlot);
+
+                        loadArguments.run();
+
+                        // the arguments go straight into the frame, the response is decoded in place
+                        codeBuilder
+                                .aload(callSlot)
+                                .invokevirtual(syncCallClassDesc, "buffer", syncCallBufferMethodDesc)
+                                .invokestatic(generatedClassDesc, lambdaName, lookupMethodType)
+                                .aload(callSlot)
+                                .invokevirtual(syncCallClassDesc, "await", syncCallAwaitMethodDesc);
+
+                        if (isIdempotent) {
+                            codeBuilder
+                                    // the paths join without a common type to compute for the slot
+                                    .aconst_null()
+                                    .astore(callSlot)
+                                    .goto_(decode)
+                                    .labelBinding(hedged);
+                        }
                     }
 
-                    codeBuilder
-                            .invokedynamic(callSiteDesc)
-                            .astore(3);
+                    // not emitted when the allocation-free path is the only one
+                    if (!isSync || isIdempotent) {
+                        loadArguments.run();
+                        codeBuilder
+                                .invokedynamic(callSiteDesc)
+                                .astore(3);
 
-                    codeBuilder
-                            .aload(0)
-                            .getfield(generatedClassDesc, "client", pulseClientClassDesc)
-                            .aload(3);
+                        codeBuilder
+                                .aload(0)
+                                .getfield(generatedClassDesc, "client", pulseClientClassDesc)
+                                .aload(3);
 
-                    codeBuilder
-                            .invokevirtual(pulseClientClassDesc, "call", clientCallMethodDesc)
-                            .invokeinterface(futureClassDesc, "get", MethodTypeDesc.of(ConstantDescs.CD_Object));
+                        if (isOneWay) {
+                            codeBuilder
+                                    .invokevirtual(pulseClientClassDesc, "callOneWay", clientCallOneWayMethodDesc)
+                                    .return_();
+                            return;
+                        }
 
-                    switch (returnTypeDescStr) {
-                        case "B" -> codeBuilder
-                                .checkcast(bufferClassDesc)
-                                .astore(4)
-                                .invokevirtual(bufferClassDesc, "readByte", bufferReadByteMethodDesc)
-                                .ireturn();
-                        case "Z" -> codeBuilder
+                        if (isAsync) {
+                            if (valueType == Void.class) {
+                                codeBuilder.aconst_null();
+                            } else {
+                                var serializerField = classDescToSerializerFieldMap.get(valueTypeClassDesc);
+                                assert serializerField != null;
+
+                                codeBuilder
+                                        .aload(0)
+                                        .getfield(generatedClassDesc, serializerField.name, networkTypeClassDesc);
+                            }
+
+                            if (cached != null) codeBuilder.loadConstant(ttlNanos);
+                            codeBuilder
+                                    .loadConstant(timeoutNanos)
+                                    .invokevirtual(pulseClientClassDesc, callMethodName,
+                                            cached != null ? clientCallCachedAsyncMethodDesc : clientCallAsyncMethodDesc)
+                                    .areturn();
+                            return;
+                        }
+
+                        if (cached != null) codeBuilder.loadConstant(ttlNanos);
+                        codeBuilder
+                                .loadConstant(timeoutNanos)
+                                .invokevirtual(pulseClientClassDesc, callMethodName,
+                                        cached != null ? clientCallCachedMethodDesc : clientCallMethodDesc)
+                                .invokeinterface(futureClassDesc, "get", MethodTypeDesc.of(ConstantDescs.CD_Object));
+                        // both paths arrive with the response frame
+                        if (isSync) codeBuilder.checkcast(bufferClassDesc);
+                    }
+
+                    codeBuilder.labelBinding(decode);
+
+                    if ("V".equals(returnTypeDescStr)) {
+                        codeBuilder
                                 .checkcast(bufferClassDesc)
-                                .astore(4)
+                                .invokevirtual(bufferClassDesc, "release", bufferReleaseMethodDesc)
+                                .return_();
+                        return;
+                    }
+
+                    Consumer<CodeBuilder> read = switch (returnTypeDescStr) {
+                        case "B" -> block -> block
                                 .aload(4)
-                                .invokevirtual(bufferClassDesc, "readBoolean", bufferReadBooleanMethodDesc)
-                                .ireturn();
-                        case "C" -> codeBuilder
-                                .checkcast(bufferClassDesc)
-                                .astore(4)
+                                .invokevirtual(bufferClassDesc, "readByte", bufferReadByteMethodDesc);
+                        case "Z" -> block -> block
                                 .aload(4)
-                                .invokevirtual(bufferClassDesc, "readChar", bufferReadCharMethodDesc)
-                                .ireturn();
-                        case "S" -> codeBuilder
-                                .checkcast(bufferClassDesc)
-                                .astore(4)
+                                .invokevirtual(bufferClassDesc, "readBoolean", bufferReadBooleanMethodDesc);
+                        case "C" -> block -> block
                                 .aload(4)
-                                .invokevirtual(bufferClassDesc, "readShort", bufferReadShortMethodDesc)
-                                .ireturn();
-                        case "I" -> codeBuilder
-                                .checkcast(bufferClassDesc)
-                                .astore(4)
+                                .invokevirtual(bufferClassDesc, "readChar", bufferReadCharMethodDesc);
+                        case "S" -> block -> block
                                 .aload(4)
-                                .invokevirtual(bufferClassDesc, "readInt", bufferReadIntMethodDesc)
-                                .ireturn();
-                        case "F" -> codeBuilder
-                                .checkcast(bufferClassDesc)
-                                .astore(4)
+                                .invokevirtual(bufferClassDesc, "readShort", bufferReadShortMethodDesc);
+                        case "I" -> block -> block
+                                .aload(4)
+                                .invokevirtual(bufferClassDesc, "readInt", bufferReadIntMethodDesc);
+                        case "F" -> block -> block
                                 .aload(4)
-                                .invokevirtual(bufferClassDesc, "readFloat", bufferReadFloatMethodDesc)
-                                .freturn();
+                                .invokevirtual(bufferClassDesc, "readFloat", bufferReadFloatMethodDesc);
 
-                        case "J" -> codeBuilder
-                                .checkcast(bufferClassDesc)
-                                .astore(4)
+                        case "J" -> block -> block
                                 .aload(4)
-                                .invokevirtual(bufferClassDesc, "readLong", bufferReadLongMethodDesc)
-                                .lreturn();
-                        case "D" -> codeBuilder
-                                .checkcast(bufferClassDesc)
-                                .astore(4)
+                                .invokevirtual(bufferClassDesc, "readLong", bufferReadLongMethodDesc);
+                        case "D" -> block -> block
                                 .aload(4)
-                                .invokevirtual(bufferClassDesc, "readDouble", bufferReadDoubleMethodDesc)
-                                .dreturn();
-
-                        case "V" -> codeBuilder.return_();
+                                .invokevirtual(bufferClassDesc, "readDouble", bufferReadDoubleMethodDesc);
 
                         default -> {
                             var serializerField = classDescToSerializerFieldMap.get(returnTypeClassDesc);
                             assert serializerField != null;
 
-                            codeBuilder
-                                    .checkcast(bufferClassDesc)
-                                    .astore(4)
+                            yield block -> block
                                     .aload(0)
                                     .getfield(generatedClassDesc, serializerField.name, networkTypeClassDesc)
                                     .aload(4)
                                     .invokeinterface(networkTypeClassDesc, "read", networkTypeReadMethodDesc)
-                                    .checkcast(returnTypeClassDesc)
-                                    .areturn();
+                                    .checkcast(returnTypeClassDesc);
                         }
-                    }
+                    };
+
+                    // a response that fails to decode goes back to its pool as well
+                    codeBuilder
+                            .checkcast(bufferClassDesc)
+                            .astore(4)
+                            .trying(read::accept, catchBuilder -> catchBuilder.catchingAll(handler -> handler
+                                    .aload(4)
+                                    .invokevirtual(bufferClassDesc, "release", bufferReleaseMethodDesc)
+                                    .athrow()))
+                            .aload(4)
+                            .invokevirtual(bufferClassDesc, "release", bufferReleaseMethodDesc)
+                            .return_(TypeKind.from(returnTypeClassDesc));
                 });
             }
 
@@ -511,8 +644,66 @@ public final class CodeGen {
         Class<T> pulse$prototype();
     }
 
-    record MethodDefinition(String name, MethodTypeDesc desc, String lambdaName,
-                            MethodTypeDesc lambdaMethodDesc, BiConsumer<Integer, CodeBuilder> argumentReader) {
+    record MethodDefinition(String name, MethodTypeDesc desc, String lambdaName, MethodTypeDesc lambdaMethodDesc,
+                            boolean async, BiConsumer<Integer, CodeBuilder> argumentReader) {
+    }
+
+    /**
+     * @return the methods of a service interface, a method's id is its index
+     */
+    static Method[] methods(Class<?> proto) {
+        var declaredMethods = proto.getDeclaredMethods();
+        Arrays.sort(declaredMethods, Comparator.comparing(Method::getName));
+        return declaredMethods;
+    }
+
+    static boolean isAsync(Class<?> returnType) {
+        return returnType == CompletableFuture.class || returnType == CompletionStage.class;
+    }
+
+    static boolean isOneWay(Method method) {
+        if (!method.isAnnotationPresent(OneWay.class)) return false;
+        if (method.getReturnType() != void.class)
+            throw new IllegalArgumentException("One-way methods must return void: " + method);
+        return true;
+    }
+
+    static Class<?> asyncValueType(Method method) {
+        if (method.getGenericReturnType() instanceof ParameterizedType parameterizedType) {
+            switch (parameterizedType.getActualTypeArguments()[0]) {
+                case Class<?> type -> {
+                    return type;
+                }
+                case ParameterizedType type when type.getRawType() instanceof Class<?> rawType -> {
+                    return rawType;
+                }
+                default -> {
+                }
+            }
+        }
+        throw new IllegalArgumentException("Future value type must be a class: " + method);
+    }
+
+    /**
+     * Called by generated servers: the response is written once the future of the implementation completes.
+     */
+    public static <T> CompletableFuture<Buffer.Writable> respondAsync(CompletionStage<T> stage, @Nullable Type<T> type) {
+        var response = new CompletableFuture<Buffer.Writable>();
+        stage.whenComplete((value, e) -> {
+            if (e != null) {
+                response.completeExceptionally(e);
+            } else {
+                response.complete(type == null ? Buffer.Writable.DUMMY : buffer -> type.write(buffer, value));
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Called by generated servers for methods returning futures.
+     */
+    public static CompletableFuture<Buffer.Writable> flatten(CompletableFuture<CompletableFuture<Buffer.Writable>> future) {
+        return future.thenCompose(Function.identity());
     }
 
     static <T> byte[] implementServer(Class<T> proto, T instance) throws Throwable {
@@ -536,6 +727,13 @@ public final class CodeGen {
                     supplierClassDesc, executorClassDesc
             );
 
+            var codeGenClassDesc = ClassDesc.of(CodeGen.class.getName());
+            var codeGenRespondAsyncMethodDesc = MethodTypeDesc.of(
+                    completableFutureClassDesc,
+                    ClassDesc.of(CompletionStage.class.getName()), ClassDesc.of(Type.class.getName())
+            );
+            var codeGenFlattenMethodDesc = MethodTypeDesc.of(completableFutureClassDesc, completableFutureClassDesc);
+
             var stringBuilderClassDesc = ClassDesc.of(StringBuilder.class.getName());
             var stringBuilderAppendStringMethodDesc = MethodTypeDesc.of(stringBuilderClassDesc, ConstantDescs.CD_String);
             var stringBuilderAppendIntMethodDesc = MethodTypeDesc.of(stringBuilderClassDesc, ConstantDescs.CD_int);
@@ -653,16 +851,22 @@ public final class CodeGen {
                 var isReturnPrimitive = returnTypeClassDesc.isPrimitive();
                 var isReturnVoid = returnTypeClassDesc == ConstantDescs.CD_void;
 
-                if (!isReturnPrimitive) {
-                    var typeName = returnTypeClassDesc.displayName().replace("[]", "Array");
+                // the response of a future is written once it completes
+                var isAsync = isAsync(returnType);
+                var valueType = isAsync ? asyncValueType(declaredMethod) : returnType;
+                var valueTypeDescStr = valueType.descriptorString();
+                var valueTypeClassDesc = ClassDesc.ofDescriptor(valueTypeDescStr);
+
+                if (!valueTypeClassDesc.isPrimitive() && valueType != Void.class) {
+                    var typeName = valueTypeClassDesc.displayName().replace("[]", "Array");
                     var fieldName = typeName + '$' + "ser" + nextFieldId++;
-                    classDescToSerializerFieldMap.computeIfAbsent(returnTypeClassDesc, _ -> {
+                    classDescToSerializerFieldMap.computeIfAbsent(valueTypeClassDesc, _ -> {
                         var signature = SignatureAttribute.of(Signature.parseFrom(
-                                String.format("%s<%s>;", networkTypeClassDescStrForSignature, returnTypeDescStr)
+                                String.format("%s<%s>;", networkTypeClassDescStrForSignature, valueTypeDescStr)
                         ));
                         classBuilder.withField(fieldName, networkTypeClassDesc,
                                 fieldBuilder -> fieldBuilder.withFlags(ClassFile.ACC_PRIVATE | ClassFile.ACC_FINAL).with(signature));
-                        return new SerializerField(fieldName, returnType);
+                        return new SerializerField(fieldName, valueType);
                     });
                 }
 
@@ -735,10 +939,10 @@ public final class CodeGen {
                 });
 
                 var lambdaName = "lambda" + '$' + declaredMethod.getName() + '$' + nextLambdaId++;
-                var lambdaMethodDesc = MethodTypeDesc.of(bufferWritableClassDesc, parametersClassDescs);
+                var lambdaMethodDesc = MethodTypeDesc.of(isAsync ? completableFutureClassDesc : bufferWritableClassDesc, parametersClassDescs);
 
                 var serializeLambdaName = "lambda" + '$' + declaredMethod.getName() + '$' + "ser" + nextLambdaId++;
-                if (!isReturnVoid) {
+                if (!isReturnVoid && !isAsync) {
                     final MethodTypeDesc serializeLambdaMethodDesc;
                     if (isReturnPrimitive) {
                         serializeLambdaMethodDesc = MethodTypeDesc.of(ConstantDescs.CD_void, returnTypeClassDesc, bufferClassDesc);
@@ -828,6 +1032,24 @@ public final class CodeGen {
 
                             codeBuilder.invokevirtual(generatedClassDesc, declaredMethod.getName(), declaredMethodDesc);
 
+                            if (isAsync) {
+                                if (valueType == Void.class) {
+                                    codeBuilder.aconst_null();
+                                } else {
+                                    var serializerField = classDescToSerializerFieldMap.get(valueTypeClassDesc);
+                                    assert serializerField != null;
+
+                                    codeBuilder
+                                            .aload(0)
+                                            .getfield(generatedClassDesc, serializerField.name, networkTypeClassDesc);
+                                }
+
+                                codeBuilder
+                                        .invokestatic(codeGenClassDesc, "respondAsync", codeGenRespondAsyncMethodDesc)
+                                        .areturn();
+                                return;
+                            }
+
                             if (isReturnVoid) {
                                 codeBuilder
                                         .getstatic(bufferWritableClassDesc, "DUMMY", bufferWritableClassDesc)
@@ -1001,7 +1223,7 @@ public final class CodeGen {
                 };
 
                 var methodDef = new MethodDefinition(
-                        declaredMethod.getName(), declaredMethodDesc, lambdaName, lambdaMethodDesc, argumentReader
+                        declaredMethod.getName(), declaredMethodDesc, lambdaName, lambdaMethodDesc, isAsync, argumentReader
                 );
                 methodDefs.add(methodDef);
             }
@@ -1047,12 +1269,9 @@ public final class CodeGen {
                                                 DirectMethodHandleDesc.Kind.VIRTUAL,
                                                 generatedClassDesc,
                                                 methodDef.lambdaName,
-                                                MethodTypeDesc.of(
-                                                        bufferWritableClassDesc,
-                                                        methodDef.lambdaMethodDesc.parameterList()
-                                                )
+                                                methodDef.lambdaMethodDesc
                                         ),
-                                        MethodTypeDesc.of(bufferWritableClassDesc)
+                                        MethodTypeDesc.of(methodDef.lambdaMethodDesc.returnType())
                                 );
 
                                 methodDef.argumentReader.accept(5, codeBuilder);
@@ -1064,6 +1283,9 @@ public final class CodeGen {
                                         "supplyAsync",
                                         completableFutureSupplyAsyncMethodTypeDesc
                                 );
+                                if (methodDef.async) {
+                                    codeBuilder.invokestatic(codeGenClassDesc, "flatten", codeGenFlattenMethodDesc);
+                                }
 
                                 codeBuilder.areturn();
                             }
@@ -0,0 +1,15 @@
+package pulse;
+
+import java.io.Serial;
+
+/**
+ * Completes a call whose response did not arrive before its deadline.
+ */
+public class DeadlineExceededException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 4383218735616104745L;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
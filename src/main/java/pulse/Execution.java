@@ -0,0 +1,41 @@
+package pulse;
+
+import java.lang.annotation.*;
+
+/**
+ * Chooses where the server runs the calls of a service or of a single method, a method's annotation overrides its
+ * interface's. Without one, every call runs on a virtual thread of its own.
+ *
+ * @see PulseServer#registerExecutor(String, java.util.concurrent.Executor)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Execution {
+    Mode value();
+
+    /**
+     * @return the name of the executor registered with the server, only for {@link Mode#POOL}
+     */
+    String executor() default "";
+
+    enum Mode {
+        /**
+         * Runs on the connection's read thread, without a handoff. For short methods that never block,
+         * calls of the connection wait for each other and are not interrupted once their deadline passes.
+         * <p>
+         * With an {@linkplain PulseServer#setEventLoopGroup event loop group}, selector or io_uring, that thread
+         * is the loop shared by many connections: every connection of the loop waits for the call.
+         */
+        INLINE,
+        /**
+         * Runs on a new virtual thread.
+         */
+        VIRTUAL_THREAD,
+        /**
+         * Runs on a registered executor, for example a bounded pool of platform threads for CPU-heavy methods
+         * or methods that pin their carrier thread.
+         */
+        POOL
+    }
+}
@@ -0,0 +1,249 @@
+package pulse;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares the server between connections by deficit round-robin, so that a connection flooding the server
+ * only delays its own calls. Calls queue per connection and service and at most {@code parallelism} of them
+ * run at once; whenever one ends, the next is taken from the flows in turn, each flow receiving a quantum per
+ * round proportional to its weight and spending it on the encoded size of its calls. Once no flow can afford
+ * its next call, the rounds until one can are credited at once instead of being gone through one by one.
+ * <p>
+ * Within a flow, calls with the earliest deadline run first and calls without one after them in arrival order.
+ * Calls whose deadline passed while they were queued are dropped without running, nobody waits for their answer.
+ * <p>
+ * Calls of {@link Execution.Mode#INLINE} methods bypass the scheduler.
+ *
+ * @see PulseServer#setScheduler(FairScheduler)
+ * @see <a href="https://doi.org/10.1109/90.502236">Efficient Fair Queuing Using Deficit Round-Robin</a>
+ */
+public final class FairScheduler {
+    // per call on top of its bytes, so that tiny calls are not free
+    private static final int CALL_COST = 64;
+    private static final int QUANTUM = 4 * CALL_COST;
+
+    @FunctionalInterface
+    public interface Weigher {
+        /**
+         * @return the share of the flow, at least one
+         */
+        int weight(SocketAddress remoteAddress, int serviceId);
+    }
+
+    private final int parallelism;
+    private final Weigher weigher;
+
+    // guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Flow> active = new ArrayDeque<>();
+    private int running;
+    private long sequence;
+    private long expired;
+
+    public FairScheduler(int parallelism) {
+        this(parallelism, (_, _) -> 1);
+    }
+
+    /**
+     * @param parallelism how many calls run at once
+     * @param weigher     gives each remote address and service its share
+     */
+    public FairScheduler(int parallelism, Weigher weigher) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism < 1");
+        this.parallelism = parallelism;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return a new flow for the calls of a service from the given address
+     */
+    Flow flow(SocketAddress remoteAddress, int serviceId) {
+        return new Flow(Math.max(1, weigher.weight(remoteAddress, serviceId)));
+    }
+
+    /**
+     * @param bytes    the encoded size of the call
+     * @param deadline the {@link System#nanoTime()} by which the client stops waiting, zero without one
+     * @return an executor queueing the call's handlers in the flow before running them on {@code executor}
+     */
+    Executor on(Flow flow, int bytes, long deadline, Executor executor) {
+        return task -> submit(flow, CALL_COST + bytes, deadline, task, executor);
+    }
+
+    private void submit(Flow flow, int cost, long deadline, Runnable runnable, Executor executor) {
+        @Nullable ArrayList<Task> dispatched;
+        lock.lock();
+        try {
+            flow.queue.add(new Task(flow, cost, deadline, sequence++, runnable, executor));
+            if (!flow.active) {
+                flow.active = true;
+                active.addLast(flow);
+            }
+            dispatched = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        run(dispatched);
+    }
+
+    private void done() {
+        @Nullable ArrayList<Task> dispatched;
+        lock.lock();
+        try {
+            running--;
+            dispatched = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        run(dispatched);
+    }
+
+    private @Nullable ArrayList<Task> dispatch() {
+        @Nullable ArrayList<Task> dispatched = null;
+        long now = System.nanoTime();
+        while (running < parallelism) {
+            var task = next(now);
+            if (task == null) break;
+
+            running++;
+            if (dispatched == null) dispatched = new ArrayList<>(1);
+            dispatched.add(task);
+        }
+        return dispatched;
+    }
+
+    private @Nullable Task next(long now) {
+        // flows in a row that could not afford their next call this round
+        int stalled = 0;
+        while (true) {
+            var flow = active.peekFirst();
+            if (flow == null) return null;
+
+            if (!flow.credited) {
+                flow.deficit += (long) QUANTUM * flow.weight;
+                flow.credited = true;
+            }
+
+            var task = flow.queue.peek();
+            assert task != null;
+            boolean isExpired = task.deadline != 0 && now - task.deadline >= 0;
+            if (isExpired || task.cost <= flow.deficit) {
+                flow.queue.poll();
+                if (!isExpired) flow.deficit -= task.cost;
+                if (flow.queue.isEmpty()) {
+                    // an idle flow saves no credit
+                    active.pollFirst();
+                    flow.active = flow.credited = false;
+                    flow.deficit = 0;
+                }
+
+                // its call is cancelled by its own timer, dropping costs nothing
+                if (isExpired) {
+                    expired++;
+                    stalled = 0;
+                    continue;
+                }
+                return task;
+            }
+
+            // spent its quantum for this round
+            active.pollFirst();
+            flow.credited = false;
+            active.addLast(flow);
+
+            if (++stalled == active.size()) {
+                skipRounds();
+                stalled = 0;
+            }
+        }
+    }
+
+    /**
+     * Credits every active flow the rounds it takes until the first of them can afford its next call,
+     * nobody would run a call in between. Each flow has received its quantum of the current round already.
+     */
+    private void skipRounds() {
+        long rounds = Long.MAX_VALUE;
+        for (var flow : active) {
+            var task = flow.queue.peek();
+            assert task != null;
+            long quantum = (long) QUANTUM * flow.weight;
+            rounds = Math.min(rounds, (task.cost - flow.deficit + quantum - 1) / quantum);
+        }
+
+        for (var flow : active) {
+            flow.deficit += rounds * QUANTUM * flow.weight;
+            flow.credited = true;
+        }
+    }
+
+    private void run(@Nullable ArrayList<Task> dispatched) {
+        if (dispatched == null) return;
+
+        for (var task : dispatched) {
+            try {
+                task.executor.execute(() -> {
+                    try {
+                        task.runnable.run();
+                    } finally {
+                        done();
+                    }
+                });
+            } catch (Throwable e) {
+                //noinspection CallToPrintStackTrace
+                e.printStackTrace();
+                done();
+            }
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return how many calls were dropped because their deadline passed while they were queued
+     */
+    public long getExpired() {
+        lock.lock();
+        try {
+            return expired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The calls of a service from one connection, guarded by the scheduler's lock.
+     */
+    static final class Flow {
+        private final int weight;
+        private final PriorityQueue<Task> queue = new PriorityQueue<>();
+        private long deficit;
+        private boolean active, credited;
+
+        private Flow(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private record Task(Flow flow, int cost, long deadline, long sequence, Runnable runnable, Executor executor)
+            implements Comparable<Task> {
+        @Override
+        public int compareTo(Task other) {
+            if (deadline != other.deadline) {
+                if (deadline == 0) return 1;
+                if (other.deadline == 0) return -1;
+                return Long.compare(deadline - other.deadline, 0);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
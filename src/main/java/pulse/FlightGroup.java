@@ -0,0 +1,111 @@
+package pulse;
+
+import pulse.network.Buffer;
+import pulse.network.BufferPool;
+import pulse.network.Connection;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The requests of {@link SingleFlight} calls in flight, keyed by their encoded payload.
+ */
+final class FlightGroup {
+    // heap buffers compare and hash by their content
+    private final ConcurrentHashMap<ByteBuffer, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Joins the request in flight for an identical payload, or sends one with {@code send}.
+     *
+     * @return the response, retained for this caller alone
+     */
+    CompletableFuture<Buffer> call(Buffer.Writable payload, Function<Buffer.Writable, CompletableFuture<Buffer>> send) {
+        return call(encode(payload), send);
+    }
+
+    /**
+     * @param bytes the encoded payload
+     */
+    CompletableFuture<Buffer> call(byte[] bytes, Function<Buffer.Writable, CompletableFuture<Buffer>> send) {
+        var key = ByteBuffer.wrap(bytes);
+        var waiter = new CompletableFuture<Buffer>();
+
+        while (true) {
+            var flight = new Flight();
+            var existing = flights.putIfAbsent(key, flight);
+            if (existing != null) {
+                // completing already, start another one
+                if (existing.join(waiter)) return waiter;
+                continue;
+            }
+
+            flight.join(waiter);
+            final CompletableFuture<Buffer> response;
+            try {
+                response = send.apply(buffer -> buffer.writeBytes(bytes));
+            } catch (Throwable e) {
+                // otherwise the flight stays in the map and every identical call joins it forever
+                flights.remove(key, flight);
+                flight.complete(null, e);
+                return waiter;
+            }
+
+            response.whenComplete((buffer, e) -> {
+                flights.remove(key, flight);
+                flight.complete(buffer, e);
+            });
+            return waiter;
+        }
+    }
+
+    static byte[] encode(Buffer.Writable payload) {
+        long capacity = Connection.MAX_PACKET_SIZE;
+        while (true) {
+            var buffer = BufferPool.acquire(capacity);
+            try {
+                payload.writeSelfInto(buffer);
+                return buffer.readBytes((int) buffer.readable());
+            } catch (Buffer.OverflowException e) {
+                if (capacity > Connection.MAX_MESSAGE_SIZE)
+                    throw new IllegalStateException("Packet is too large: " + payload);
+                capacity *= 2;
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    private static final class Flight {
+        private final ArrayList<CompletableFuture<Buffer>> waiters = new ArrayList<>(1);
+        private boolean done;
+
+        synchronized boolean join(CompletableFuture<Buffer> waiter) {
+            if (done) return false;
+            waiters.add(waiter);
+            return true;
+        }
+
+        void complete(Buffer response, Throwable e) {
+            synchronized (this) {
+                done = true;
+            }
+
+            if (e != null) {
+                for (var waiter : waiters) waiter.completeExceptionally(e);
+                return;
+            }
+
+            try {
+                // every caller decodes and releases its own reference
+                for (var waiter : waiters) {
+                    if (!waiter.complete(response.retain())) response.release();
+                }
+            } finally {
+                response.release();
+            }
+        }
+    }
+}
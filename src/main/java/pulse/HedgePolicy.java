@@ -0,0 +1,50 @@
+package pulse;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a call still waiting for its response is sent to a second server as well, the first response wins.
+ * Only for {@link Idempotent} methods of clients connected to more than one server.
+ * <p>
+ * The budget caps hedges to a fraction of all calls, so that a slow cluster does not receive twice the load.
+ *
+ * @see PulseClient#setHedgePolicy(HedgePolicy)
+ */
+public sealed interface HedgePolicy {
+    double DEFAULT_BUDGET = 0.05;
+
+    /**
+     * Hedges calls without a response after {@code delay}.
+     */
+    static HedgePolicy delay(long delay, TimeUnit unit) {
+        return new Fixed(unit.toNanos(delay), DEFAULT_BUDGET);
+    }
+
+    /**
+     * Hedges calls slower than the given percentile of recent calls, for example {@code 0.95}.
+     * Nothing is hedged until a few hundred calls were measured.
+     */
+    static HedgePolicy percentile(double percentile) {
+        return new Percentile(percentile, DEFAULT_BUDGET);
+    }
+
+    /**
+     * @return the share of calls that may be hedged, {@code 0.05} allows five percent extra load
+     */
+    double budget();
+
+    record Fixed(long delayNanos, double budget) implements HedgePolicy {
+        public Fixed {
+            if (delayNanos < 1) throw new IllegalArgumentException("delayNanos < 1");
+            if (!(budget >= 0 && budget <= 1)) throw new IllegalArgumentException("budget not in [0, 1]: " + budget);
+        }
+    }
+
+    record Percentile(double percentile, double budget) implements HedgePolicy {
+        public Percentile {
+            if (!(percentile > 0 && percentile < 1))
+                throw new IllegalArgumentException("percentile not in (0, 1): " + percentile);
+            if (!(budget >= 0 && budget <= 1)) throw new IllegalArgumentException("budget not in [0, 1]: " + budget);
+        }
+    }
+}
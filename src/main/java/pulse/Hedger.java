@@ -0,0 +1,128 @@
+package pulse;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The state of a {@link HedgePolicy}: a token bucket every call pays its budget into and every hedge takes a token from,
+ * and for percentile policies a log-linear histogram of recent latencies.
+ * <p>
+ * The histogram has four buckets per power of two, so the percentile is off by at most a quarter.
+ * It is recomputed every few hundred calls, which halves all counts so that old latencies fade out.
+ */
+final class Hedger {
+    /**
+     * A one-way call of this service cancels the call with the int callback id that follows, it lost to its hedge.
+     */
+    static final int CANCEL_SERVICE_ID = -2;
+
+    // fixed point, one hedge costs a token
+    private static final long TOKEN = 1 << 16;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private static final int SUB_BUCKET_BITS = 2, SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = Long.SIZE * SUB_BUCKETS;
+    private static final int RECOMPUTE_INTERVAL = 256;
+
+    private final HedgePolicy policy;
+    private final long deposit;
+    private final AtomicLong tokens = new AtomicLong();
+    private final LongAdder hedges = new LongAdder();
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final AtomicLong samples = new AtomicLong();
+    private volatile long delayNanos;
+
+    Hedger(HedgePolicy policy) {
+        this.policy = policy;
+        this.deposit = Math.round(policy.budget() * TOKEN);
+        this.delayNanos = policy instanceof HedgePolicy.Fixed fixed ? fixed.delayNanos() : 0;
+    }
+
+    HedgePolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Pays the budget of a new call, unless there is no second server to hedge it to.
+     *
+     * @param endpoints how many connections the client has
+     * @return how long to wait for its response before hedging it, not positive to never hedge it
+     */
+    long delayNanos(int endpoints) {
+        // calls that can never be hedged must not fund hedges once a second server joins
+        if (endpoints < 2) return 0;
+
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= MAX_TOKENS) break;
+        } while (!tokens.compareAndSet(current, Math.min(MAX_TOKENS, current + deposit)));
+        return delayNanos;
+    }
+
+    /**
+     * @return whether the budget allows another hedge
+     */
+    boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) return false;
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        hedges.increment();
+        return true;
+    }
+
+    long hedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * Records the latency of a successful call.
+     */
+    void record(long latencyNanos) {
+        if (!(policy instanceof HedgePolicy.Percentile percentile)) return;
+
+        histogram.incrementAndGet(bucket(Math.max(0, latencyNanos)));
+        if (samples.incrementAndGet() % RECOMPUTE_INTERVAL == 0) delayNanos = recompute(percentile.percentile());
+    }
+
+    private long recompute(double percentile) {
+        var counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts[i] = histogram.get(i);
+
+        long target = (long) Math.ceil(total * percentile);
+        long result = 0, seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                result = upperBound(i);
+                break;
+            }
+        }
+
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 1) histogram.addAndGet(i, -(counts[i] >> 1));
+        }
+        return result;
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,14 @@
+package pulse;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a method that can safely run more than once for one call, so that the client may
+ * {@linkplain PulseClient#setHedgePolicy hedge} it. {@link SingleFlight} and {@link Cached} methods are
+ * idempotent already.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Idempotent {
+}
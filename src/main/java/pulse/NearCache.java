@@ -0,0 +1,271 @@
+package pulse;
+
+import org.jetbrains.annotations.Nullable;
+import pulse.network.Buffer;
+import pulse.util.FrequencySketch;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client-side cache of encoded responses to {@link Cached} methods, bounded by bytes.
+ * <p>
+ * Responses are copied off-heap into segments of their own, freed by the garbage collector once evicted and
+ * no longer decoded. Eviction follows W-TinyLFU: new entries enter a small LRU window, and an entry leaving
+ * the window only replaces the least recently used entry of the main space if it was requested more often
+ * according to a {@link FrequencySketch}. The main space is a segmented LRU, entries hit while on probation
+ * move to the protected segment.
+ * <p>
+ * Lookups do not lock. Hits are recorded for the policy only if its lock is free, so under contention
+ * some are dropped, which barely affects the frequencies.
+ *
+ * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a>
+ */
+public final class NearCache {
+    private static final int WINDOW_PERCENT = 1, PROTECTED_PERCENT = 80;
+    // assumed for sizing the sketch
+    private static final int AVERAGE_ENTRY_BYTES = 256;
+
+    private static final byte WINDOW = 0, PROBATION = 1, PROTECTED = 2, REMOVED = 3;
+
+    // heap buffers compare and hash by their content
+    private final ConcurrentHashMap<ByteBuffer, Entry> entries = new ConcurrentHashMap<>();
+    private final long maximumBytes, windowMaximum, mainMaximum, protectedMaximum;
+
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    // guarded by the lock, lists are circular around a sentinel with the most recent entry first
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final Entry window = Entry.sentinel(), probation = Entry.sentinel(), protectedSegment = Entry.sentinel();
+    private long windowBytes, probationBytes, protectedBytes;
+
+    public NearCache(long maximumBytes) {
+        if (maximumBytes <= 0) throw new IllegalArgumentException("maximumBytes <= 0");
+
+        this.maximumBytes = maximumBytes;
+        this.windowMaximum = Math.max(1, maximumBytes * WINDOW_PERCENT / 100);
+        this.mainMaximum = maximumBytes - windowMaximum;
+        this.protectedMaximum = mainMaximum * PROTECTED_PERCENT / 100;
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, maximumBytes / AVERAGE_ENTRY_BYTES));
+    }
+
+    /**
+     * @return the cached response positioned at the result, or {@code null} on a miss
+     */
+    @Nullable Buffer get(ByteBuffer key) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        if (entry.expiresAt - System.nanoTime() <= 0) {
+            misses.increment();
+            lock.lock();
+            try {
+                if (entries.remove(key, entry)) unlink(entry);
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        }
+
+        hits.increment();
+        if (lock.tryLock()) {
+            try {
+                onAccess(entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        var buffer = new Buffer(entry.arena, entry.value);
+        buffer.setWriteIndex(entry.value.byteSize());
+        return buffer;
+    }
+
+    /**
+     * Copies the readable bytes of {@code response}, leaving it as is.
+     */
+    void put(ByteBuffer key, Buffer response, long ttlNanos) {
+        long length = response.readable();
+        long weight = key.capacity() + length;
+        if (weight > maximumBytes) return;
+
+        var arena = Arena.ofAuto();
+        var value = arena.allocate(Math.max(1, length)).asSlice(0, length);
+        MemorySegment.copy(response.getSegment(), response.getReadIndex(), value, 0, length);
+        var entry = new Entry(key, key.hashCode(), arena, value, System.nanoTime() + ttlNanos, weight);
+
+        lock.lock();
+        try {
+            var previous = entries.put(key, entry);
+            if (previous != null) unlink(previous);
+
+            sketch.increment(entry.hash);
+            link(window, entry, WINDOW);
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            for (var entry : entries.values()) {
+                if (entries.remove(entry.key, entry)) unlink(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onAccess(Entry entry) {
+        if (entry.queue == REMOVED) return;
+        sketch.increment(entry.hash);
+
+        switch (entry.queue) {
+            case WINDOW -> {
+                unlink(entry);
+                link(window, entry, WINDOW);
+            }
+            case PROBATION -> {
+                unlink(entry);
+                link(protectedSegment, entry, PROTECTED);
+                // the protected segment overflows into probation
+                while (protectedBytes > protectedMaximum) {
+                    var demoted = protectedSegment.previous;
+                    unlink(demoted);
+                    link(probation, demoted, PROBATION);
+                }
+            }
+            default -> {
+                unlink(entry);
+                link(protectedSegment, entry, PROTECTED);
+            }
+        }
+    }
+
+    private void evict() {
+        while (windowBytes > windowMaximum) {
+            var candidate = window.previous;
+            unlink(candidate);
+            link(probation, candidate, PROBATION);
+
+            while (probationBytes + protectedBytes > mainMaximum) {
+                // the candidate was linked first, so the probation segment is never empty here
+                var victim = probation.previous;
+                if (victim == candidate || sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) {
+                    remove(candidate);
+                    break;
+                }
+                remove(victim);
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        unlink(entry);
+        entries.remove(entry.key, entry);
+        evictions.increment();
+    }
+
+    private void link(Entry list, Entry entry, byte queue) {
+        entry.queue = queue;
+        entry.previous = list;
+        entry.next = list.next;
+        list.next.previous = entry;
+        list.next = entry;
+
+        switch (queue) {
+            case WINDOW -> windowBytes += entry.weight;
+            case PROBATION -> probationBytes += entry.weight;
+            default -> protectedBytes += entry.weight;
+        }
+    }
+
+    private void unlink(Entry entry) {
+        switch (entry.queue) {
+            case WINDOW -> windowBytes -= entry.weight;
+            case PROBATION -> probationBytes -= entry.weight;
+            case PROTECTED -> protectedBytes -= entry.weight;
+            default -> {
+                return;
+            }
+        }
+
+        entry.queue = REMOVED;
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.next = entry.previous = entry;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHits(), requests = hits + getMisses();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * @return the bytes of keys and responses cached
+     */
+    public long getBytes() {
+        lock.lock();
+        try {
+            return windowBytes + probationBytes + protectedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        final ByteBuffer key;
+        final int hash;
+        // keeps the automatic arena of the value reachable while cached
+        final Arena arena;
+        final MemorySegment value;
+        final long expiresAt, weight;
+
+        // guarded by the lock
+        byte queue = REMOVED;
+        Entry previous = this, next = this;
+
+        Entry(ByteBuffer key, int hash, Arena arena, MemorySegment value, long expiresAt, long weight) {
+            this.key = key;
+            this.hash = hash;
+            this.arena = arena;
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+
+        static Entry sentinel() {
+            return new Entry(ByteBuffer.allocate(0), 0, Arena.global(), MemorySegment.NULL, 0, 0);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package pulse;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a {@code void} service method as fire-and-forget: the client returns as soon as the call is queued
+ * and the server sends no response, so the caller never learns about failures.
+ *
+ * @see PulseServer#getOneWayFailures()
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface OneWay {
+}
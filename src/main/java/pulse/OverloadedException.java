@@ -0,0 +1,18 @@
+package pulse;
+
+import java.io.Serial;
+
+/**
+ * Completes a call the server rejected because it was overloaded. The call did not run, so it is safe to retry,
+ * preferably after a backoff or on another server.
+ *
+ * @see AdmissionControl
+ */
+public class OverloadedException extends RemoteRuntimeException {
+    @Serial
+    private static final long serialVersionUID = -6302938815263460125L;
+
+    public OverloadedException(String message) {
+        super(message);
+    }
+}
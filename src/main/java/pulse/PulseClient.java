@@ -3,29 +3,47 @@ package pulse;
 import org.jetbrains.annotations.Nullable;
 import pulse.network.Buffer;
 import pulse.network.Connection;
+import pulse.network.EventLoopGroup;
+import pulse.network.FlushPolicy;
 import pulse.network.Type;
 import pulse.util.DefiningClassLoader;
-import space.vectrix.flare.fastutil.Int2ObjectSyncMap;
+import pulse.util.TimerWheel;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 public final class PulseClient implements AutoCloseable {
+    public static final int DEFAULT_MAX_IN_FLIGHT_CALLS = 1 << 16;
+
     private final DefiningClassLoader classLoader = new DefiningClassLoader();
     private final Map<Class<?>, Type<?>> typeMap = new IdentityHashMap<>();
 
-    private final AtomicInteger callbackId = new AtomicInteger();
-    private final Int2ObjectSyncMap<@Nullable CompletableFuture<Buffer>> callbackMap = Int2ObjectSyncMap.hashmap();
+    private final CallTable<Callback> calls;
+    private final FlightGroup flights = new FlightGroup();
+    // reused by blocking calls of generated clients
+    private final ThreadLocal<@Nullable SyncCall> syncCalls = new ThreadLocal<>();
 
     private final Connection.Processor connectionProcessor;
-    private final AtomicReference<@Nullable Connection> connectionRef = new AtomicReference<>(null);
+    // copy on write, so that picking a connection does not lock
+    private volatile Endpoint[] endpoints = new Endpoint[0];
+
+    private volatile boolean encodeOnCaller = false;
+    private volatile FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;
+    private volatile @Nullable EventLoopGroup eventLoopGroup = null;
+    private volatile @Nullable Path sharedMemoryDirectory = null;
+    private volatile long timeoutNanos = 0;
+    private volatile @Nullable NearCache nearCache = null;
+    private volatile @Nullable Hedger hedger = null;
 
     public PulseClient() {
         // cannot reference 'this' before superclass constructor is called
@@ -33,99 +51,572 @@ public final class PulseClient implements AutoCloseable {
     }
 
     public PulseClient(@Nullable Connection.Processor processor) {
-        this.connectionProcessor = processor == null ? this::process : processor;
+        this(processor, DEFAULT_MAX_IN_FLIGHT_CALLS);
+    }
+
+    /**
+     * @param maxInFlightCalls how many calls may await their response at once, a power of two;
+     *                         calls beyond are rejected with a {@link RejectedExecutionException}
+     */
+    public PulseClient(@Nullable Connection.Processor processor, int maxInFlightCalls) {
+        this.connectionProcessor = new ConnectionProcessor(processor);
+        this.calls = new CallTable<>(maxInFlightCalls);
     }
 
     public boolean connect(int port) throws IOException {
         return this.connect(new InetSocketAddress(port));
     }
 
+    /**
+     * Opens another connection, calls are spread over all connections of this client.
+     */
     // TODO: wait until connected
     public boolean connect(SocketAddress target) throws IOException {
         final SocketChannel channel = SocketChannel.open();
         channel.connect(target);
 
-        final Connection connection = new Connection(channel, connectionProcessor);
-
-        if (connectionRef.compareAndSet(null, connection)) {
-            connection.run();
-            return true;
+        final EventLoopGroup group = eventLoopGroup;
+        final Path sharedMemoryDirectory = this.sharedMemoryDirectory;
+        final Connection connection;
+        if (sharedMemoryDirectory != null) {
+            connection = Connection.openSharedMemory(channel, connectionProcessor, sharedMemoryDirectory);
         } else {
-            channel.close();
-            return false;
+            connection = new Connection(channel, connectionProcessor, group == null ? null : group.next());
+        }
+        connection.setFlushPolicy(flushPolicy);
+
+        final Endpoint endpoint = new Endpoint(connection, new AtomicInteger());
+        synchronized (this) {
+            var endpoints = this.endpoints;
+            var grown = Arrays.copyOf(endpoints, endpoints.length + 1);
+            grown[endpoints.length] = endpoint;
+            this.endpoints = grown;
         }
+
+        connection.run();
+        return true;
+    }
+
+    /**
+     * Opens {@code count} connections to the same target.
+     */
+    public void connect(SocketAddress target, int count) throws IOException {
+        if (count < 1) throw new IllegalArgumentException("count < 1");
+        for (int i = 0; i < count; i++) connect(target);
     }
 
     @Override
     public void close() {
-        final Connection connection = connectionRef.getAndSet(null);
-        if (connection != null) connection.close();
+        final Endpoint[] endpoints;
+        synchronized (this) {
+            endpoints = this.endpoints;
+            this.endpoints = new Endpoint[0];
+        }
+        for (var endpoint : endpoints) endpoint.connection().close();
+
+        // no response can arrive anymore
+        calls.removeIf(_ -> true, callback -> abort(callback, new CancellationException("Client closed")));
+    }
 
-        // TODO: cancel callbacks
+    /**
+     * Drops the connection from the pool and fails the calls still awaiting a response on it.
+     */
+    private void closed(Connection connection) {
+        for (var endpoint : this.endpoints) {
+            if (endpoint.connection() == connection) remove(endpoint);
+        }
+
+        calls.removeIf(callback -> callback.endpoint().connection() == connection,
+                callback -> abort(callback, closedException(connection)));
+    }
+
+    private static IllegalStateException closedException(Connection connection) {
+        return new IllegalStateException("Connection closed: " + connection.getRemoteAddress());
+    }
+
+    /**
+     * @return the first open connection
+     */
+    public @Nullable Connection getConnection() {
+        var endpoints = this.endpoints;
+        return endpoints.length == 0 ? null : endpoints[0].connection();
     }
 
+    public List<Connection> getConnections() {
+        return Arrays.stream(endpoints).map(Endpoint::connection).toList();
+    }
+
+    /**
+     * Waits for every connection open at the time of the call.
+     */
     public void await() {
-        final Connection connection = this.connectionRef.get();
-        if (connection != null) connection.await();
+        for (var endpoint : this.endpoints) endpoint.connection().await();
     }
 
     public boolean write(Buffer.Writable writable) {
-        final Connection connection = this.connectionRef.get();
-        return connection != null && connection.write(writable);
+        final Endpoint endpoint = pick();
+        return endpoint != null && endpoint.connection().write(writable);
     }
 
     public boolean writeAndFlush(Buffer.Writable writable) {
-        final Connection connection = this.connectionRef.get();
-        return connection != null && connection.writeAndFlush(writable);
+        final Endpoint endpoint = pick();
+        return endpoint != null && endpoint.connection().writeAndFlush(writable);
+    }
+
+    private static boolean writeEncodedAndFlush(Connection connection, Buffer.Writable writable) {
+        var frames = Connection.encode(writable);
+        if (connection.writeEncodedAndFlush(frames)) return true;
+
+        frames.release();
+        return false;
     }
 
     public void flush() {
-        final Connection connection = this.connectionRef.get();
-        if (connection != null) connection.flush();
+        for (var endpoint : this.endpoints) endpoint.connection().flush();
+    }
+
+    /**
+     * Picks the connection with fewer calls in flight out of two random ones.
+     */
+    private @Nullable Endpoint pick() {
+        while (true) {
+            var endpoints = this.endpoints;
+            var count = endpoints.length;
+            if (count == 0) return null;
+
+            Endpoint endpoint;
+            if (count == 1) {
+                endpoint = endpoints[0];
+            } else {
+                var random = ThreadLocalRandom.current();
+                int first = random.nextInt(count);
+                int second = random.nextInt(count - 1);
+                if (second >= first) second++;
+
+                var a = endpoints[first];
+                var b = endpoints[second];
+                endpoint = a.inFlight().get() <= b.inFlight().get() ? a : b;
+            }
+
+            if (endpoint.connection().isActive()) return endpoint;
+            remove(endpoint);
+        }
+    }
+
+    private synchronized void remove(Endpoint endpoint) {
+        var endpoints = this.endpoints;
+        for (int i = 0; i < endpoints.length; i++) {
+            if (endpoints[i] != endpoint) continue;
+
+            var shrunk = new Endpoint[endpoints.length - 1];
+            System.arraycopy(endpoints, 0, shrunk, 0, i);
+            System.arraycopy(endpoints, i + 1, shrunk, i, shrunk.length - i);
+            this.endpoints = shrunk;
+            return;
+        }
     }
 
     public Future<Buffer> call(Buffer.Writable payload) {
-        var callbackId = this.callbackId.getAndIncrement();
+        checkNotRecording("Blocking");
+        return send(payload, 0, false);
+    }
+
+    /**
+     * @param timeoutNanos the deadline of this call, or zero for the {@linkplain #setTimeout default}
+     */
+    public Future<Buffer> call(Buffer.Writable payload, long timeoutNanos) {
+        checkNotRecording("Blocking");
+        return send(payload, timeoutNanos, false);
+    }
+
+    /**
+     * Calls without blocking, the response is decoded by whichever thread completes the call.
+     *
+     * @param type the type of the result, or {@code null} to complete with {@code null}
+     */
+    public <T> CompletableFuture<T> call(Buffer.Writable payload, @Nullable Type<T> type) {
+        return call(payload, type, 0);
+    }
+
+    /**
+     * @param timeoutNanos the deadline of this call, or zero for the {@linkplain #setTimeout default}
+     * @see #call(Buffer.Writable, Type)
+     */
+    public <T> CompletableFuture<T> call(Buffer.Writable payload, @Nullable Type<T> type, long timeoutNanos) {
+        var batch = Batch.recording(this);
+        if (batch != null) return batch.call(payload, type);
+
+        return decode(send(payload, timeoutNanos, false), type);
+    }
+
+    /**
+     * Calls like {@link #call(Buffer.Writable, long)}, but may be {@linkplain #setHedgePolicy hedged}.
+     *
+     * @see Idempotent
+     */
+    public Future<Buffer> callIdempotent(Buffer.Writable payload, long timeoutNanos) {
+        checkNotRecording("Blocking");
+        return send(payload, timeoutNanos, true);
+    }
+
+    /**
+     * @see #callIdempotent(Buffer.Writable, long)
+     * @see #call(Buffer.Writable, Type)
+     */
+    public <T> CompletableFuture<T> callIdempotent(Buffer.Writable payload, @Nullable Type<T> type, long timeoutNanos) {
+        var batch = Batch.recording(this);
+        if (batch != null) return batch.call(payload, type);
+
+        return decode(send(payload, timeoutNanos, true), type);
+    }
+
+    private static <T> CompletableFuture<T> decode(CompletableFuture<Buffer> response, @Nullable Type<T> type) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        // runs even if the caller cancelled the result, a dependent stage would skip the release then
+        response.whenComplete((buffer, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            try {
+                if (!result.isDone()) result.complete(type == null ? null : type.read(buffer));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                buffer.release();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Shares the request with concurrent calls of an identical payload.
+     *
+     * @see SingleFlight
+     */
+    public Future<Buffer> callSingleFlight(Buffer.Writable payload, long timeoutNanos) {
+        checkNotRecording("Blocking");
+        return flights.call(payload, encoded -> send(encoded, timeoutNanos, true));
+    }
+
+    /**
+     * @see #callSingleFlight(Buffer.Writable, long)
+     * @see #call(Buffer.Writable, Type)
+     */
+    public <T> CompletableFuture<T> callSingleFlight(Buffer.Writable payload, @Nullable Type<T> type, long timeoutNanos) {
+        var batch = Batch.recording(this);
+        if (batch != null) return batch.call(payload, type);
+
+        return decode(flights.call(payload, encoded -> send(encoded, timeoutNanos, true)), type);
+    }
+
+    /**
+     * Answers from the {@linkplain #setNearCache near cache} if it holds a response to an identical payload,
+     * misses of identical payloads share one request.
+     *
+     * @param ttlNanos how long the response stays cached
+     * @see Cached
+     */
+    public Future<Buffer> callCached(Buffer.Writable payload, long ttlNanos, long timeoutNanos) {
+        checkNotRecording("Blocking");
+        return cached(payload, ttlNanos, timeoutNanos);
+    }
+
+    /**
+     * @see #callCached(Buffer.Writable, long, long)
+     * @see #call(Buffer.Writable, Type)
+     */
+    public <T> CompletableFuture<T> callCached(Buffer.Writable payload, @Nullable Type<T> type, long ttlNanos, long timeoutNanos) {
+        var batch = Batch.recording(this);
+        if (batch != null) return batch.call(payload, type);
+
+        return decode(cached(payload, ttlNanos, timeoutNanos), type);
+    }
+
+    private CompletableFuture<Buffer> cached(Buffer.Writable payload, long ttlNanos, long timeoutNanos) {
+        final NearCache cache = this.nearCache;
+        if (cache == null) return send(payload, timeoutNanos, true);
+
+        // the encoded payload holds the service and method id as well
+        final byte[] bytes = FlightGroup.encode(payload);
+        final ByteBuffer key = ByteBuffer.wrap(bytes);
+
+        var hit = cache.get(key);
+        if (hit != null) return CompletableFuture.completedFuture(hit);
+
+        return flights.call(bytes, encoded -> send(encoded, timeoutNanos, true).thenApply(response -> {
+            cache.put(key, response, ttlNanos);
+            return response;
+        }));
+    }
+
+    /**
+     * Queues a call no response is sent for.
+     *
+     * @throws IllegalStateException if the call could not be queued
+     * @see OneWay
+     */
+    public void callOneWay(Buffer.Writable payload) {
+        checkNotRecording("One-way");
+        final Endpoint endpoint = pick();
+        if (endpoint == null) throw new IllegalStateException("No active connection: " + payload);
+
+        Buffer.Writable packet = buffer -> {
+            buffer.writeInt(CallTable.NO_CALLBACK);
+            payload.writeSelfInto(buffer);
+        };
+
+        final Connection connection = endpoint.connection();
+        if (!(encodeOnCaller ? writeEncodedAndFlush(connection, packet) : connection.writeAndFlush(packet)))
+            throw new IllegalStateException("Failed to queue the packet: " + payload);
+    }
+
+    /**
+     * Starts recording calls to send in a single frame.
+     */
+    public Batch batch() {
+        return new Batch(this);
+    }
+
+    /**
+     * Fails calls that cannot wait for the batch being recorded on this thread, before they are sent right away.
+     */
+    private void checkNotRecording(String kind) {
+        if (Batch.recording(this) != null)
+            throw new IllegalStateException(kind + " calls cannot be batched, only asynchronous ones");
+    }
+
+    /**
+     * @param idempotent whether the call is idempotent and may be sent to a second server as well
+     */
+    CompletableFuture<Buffer> send(Buffer.Writable payload, long timeoutNanos, boolean idempotent) {
+        if (timeoutNanos <= 0) timeoutNanos = this.timeoutNanos;
+        final long deadline = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+
+        final Endpoint endpoint = pick();
+        if (endpoint == null)
+            return CompletableFuture.failedFuture(new IllegalStateException("No active connection: " + payload));
+
+        final long start = System.nanoTime();
+        final PendingCall primary = sendTo(endpoint, payload, deadline, timeoutNanos);
+
+        final Hedger hedger = this.hedger;
+        if (!idempotent || hedger == null || primary.isDone()) return primary;
+
+        final long delayNanos = hedger.delayNanos(this.endpoints.length);
+        if (delayNanos <= 0 || (deadline != 0 && deadline - start <= delayNanos)) {
+            primary.thenRun(() -> hedger.record(System.nanoTime() - start));
+            return primary;
+        }
+
+        final HedgedCall result = new HedgedCall(hedger, primary, start);
+        primary.whenComplete((buffer, e) -> result.completed(primary, buffer, e));
+
+        TimerWheel.shared().schedule(() -> {
+            if (result.isDone()) return;
+
+            // a hedge to the same server would wait behind the same slow call
+            final Endpoint other = pickOther(endpoint);
+            if (other == null || !hedger.tryAcquire()) return;
+
+            final PendingCall hedge = sendTo(other, payload, deadline, deadline == 0 ? 0 : Math.max(1, deadline - System.nanoTime()));
+            result.hedge = hedge;
+            hedge.whenComplete((buffer, e) -> result.completed(hedge, buffer, e));
+            if (result.isDone()) abandon(hedge);
+        }, delayNanos, TimeUnit.NANOSECONDS);
+
+        return result;
+    }
+
+    private PendingCall sendTo(Endpoint endpoint, Buffer.Writable payload, long deadline, long timeoutNanos) {
+        final PendingCall future = new PendingCall(endpoint);
+        final int callbackId;
+        try {
+            callbackId = add(future);
+        } catch (RejectedExecutionException e) {
+            // backpressure, the caller may retry once responses came in
+            future.completeExceptionally(e);
+            return future;
+        }
+        future.callbackId = callbackId;
 
         Buffer.Writable packet = buffer -> {
             buffer.writeInt(callbackId);
+            buffer.writeVarInt(remainingMicros(deadline));
             payload.writeSelfInto(buffer);
         };
 
-        CompletableFuture<Buffer> future = new CompletableFuture<>();
-        callbackMap.put(callbackId, future);
+        // armed before the call is sent, so that a response always finds the timeout to cancel
+        if (timeoutNanos > 0) {
+            final long timeout = timeoutNanos;
+            future.timeout = TimerWheel.shared().schedule(() -> {
+                if (take(callbackId) == null) return;
+                // dependents of the call run where it completes, which must not be the wheel thread
+                future.defaultExecutor().execute(() -> future.completeExceptionally(new DeadlineExceededException(
+                        "No response within " + TimeUnit.NANOSECONDS.toMillis(timeout) + "ms: " + payload)));
+            }, timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        final Connection connection = endpoint.connection();
+        final boolean queued;
+        try {
+            queued = encodeOnCaller ? writeEncodedAndFlush(connection, packet) : connection.writeAndFlush(packet);
+        } catch (Throwable e) {
+            if (take(callbackId) == future) future.cancelTimeout();
+            future.completeExceptionally(e);
+            return future;
+        }
 
-        if (!writeAndFlush(packet)) {
-            callbackMap.remove(callbackId);
-            future.completeExceptionally(new IllegalStateException("No active connection/Failed to queue the packet: " + payload));
+        if (!queued) {
+            if (take(callbackId) == future) future.cancelTimeout();
+            future.completeExceptionally(new IllegalStateException("Failed to queue the packet: " + payload));
             return future;
         }
 
-        // TODO: configurable timeout
+        // closed before the call entered the table, so the connection's closed hook missed it
+        if (!connection.isActive() && take(callbackId) == future) {
+            future.cancelTimeout();
+            future.completeExceptionally(closedException(connection));
+        }
+
         return future;
     }
 
+    /**
+     * Picks the active connection to another server with the fewest calls in flight.
+     */
+    private @Nullable Endpoint pickOther(Endpoint excluded) {
+        var address = excluded.connection().getRemoteAddress();
+        Endpoint best = null;
+        for (var endpoint : this.endpoints) {
+            var connection = endpoint.connection();
+            if (!connection.isActive() || connection.getRemoteAddress().equals(address)) continue;
+            if (best == null || endpoint.inFlight().get() < best.inFlight().get()) best = endpoint;
+        }
+        return best;
+    }
+
+    /**
+     * Stops waiting for a call that lost to its hedge, and tells its server to stop working on it.
+     */
+    private void abandon(PendingCall call) {
+        final int callbackId = call.callbackId;
+        if (take(callbackId) != call) return;
+
+        call.cancelTimeout();
+        call.cancel(false);
+        call.endpoint.connection().writeAndFlush(buffer -> {
+            buffer.writeInt(CallTable.NO_CALLBACK);
+            buffer.writeVarInt(Hedger.CANCEL_SERVICE_ID);
+            buffer.writeInt(callbackId);
+        });
+    }
+
+    /**
+     * @return the time left until {@code deadline} for the server, at least one, or zero without a deadline
+     */
+    private static int remainingMicros(long deadline) {
+        if (deadline == 0) return 0;
+        long remaining = TimeUnit.NANOSECONDS.toMicros(deadline - System.nanoTime());
+        return (int) Math.clamp(remaining, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Called by generated clients to start a blocking call on the calling thread.
+     *
+     * @param timeoutNanos the deadline of this call, or zero for the {@linkplain #setTimeout default}
+     * @return the call to write the request into, reused for the next call of the thread
+     */
+    public SyncCall syncCall(long timeoutNanos) throws ExecutionException {
+        checkNotRecording("Blocking");
+        var call = syncCalls.get();
+        if (call == null || call.isAbandoned()) {
+            call = new SyncCall(this);
+            syncCalls.set(call);
+        }
+
+        final Endpoint endpoint = pick();
+        if (endpoint == null) throw new ExecutionException(new IllegalStateException("No active connection"));
+
+        call.begin(endpoint, timeoutNanos > 0 ? timeoutNanos : this.timeoutNanos);
+        try {
+            call.start(add(call));
+        } catch (RejectedExecutionException e) {
+            throw new ExecutionException(e);
+        }
+        return call;
+    }
+
+    /**
+     * Adds a call to the table, it counts as in flight on its connection until it leaves the table.
+     *
+     * @return the id of the call
+     */
+    private int add(Callback callback) {
+        final int callbackId = calls.add(callback);
+        callback.endpoint().inFlight().incrementAndGet();
+        return callbackId;
+    }
+
+    /**
+     * Removes a call from the table, whether a response, a timeout or the caller ended it.
+     * Calls the server dropped never get a response, so this is where they stop counting as in flight.
+     *
+     * @return the call, or {@code null} if it left the table already
+     */
+    private @Nullable Callback take(int callbackId) {
+        final Callback callback = calls.remove(callbackId);
+        if (callback != null) callback.endpoint().inFlight().decrementAndGet();
+        return callback;
+    }
+
+    /**
+     * @return whether the call was still awaiting its response
+     */
+    boolean remove(int callbackId, Callback callback) {
+        return take(callbackId) == callback;
+    }
+
+    /**
+     * Fails a call that left the table without a response.
+     */
+    private static void abort(Callback callback, RuntimeException cause) {
+        callback.endpoint().inFlight().decrementAndGet();
+        callback.abort(cause);
+    }
+
     public void process(Connection connection, Buffer buffer) {
         int callbackId = buffer.readInt();
 
-        var future = callbackMap.remove(callbackId);
-        if (future == null) return;
+        switch (take(callbackId)) {
+            case null -> {
+            }
+            case SyncCall call -> call.complete(buffer);
+            case PendingCall future -> complete(future, buffer);
+        }
+    }
+
+    private static void complete(PendingCall future, Buffer buffer) {
+        future.cancelTimeout();
 
-        // is successful?
-        if (buffer.readBoolean()) {
+        var status = buffer.readByte();
+        if (status == Status.SUCCESS) {
             var length = buffer.readable();
             var slice = buffer.slice(buffer.getReadIndex(), length);
             slice.setWriteIndex(length);
 
-            future.complete(slice);
+            // the caller decodes the result later and releases the frame
+            if (!future.complete(slice.retain())) slice.release();
         } else {
-            var message = buffer.readUtf8();
-            var exception = new RemoteRuntimeException(message);
-
-            future.completeExceptionally(exception);
+            future.completeExceptionally(failure(status, buffer.readUtf8()));
         }
     }
 
+    static RemoteRuntimeException failure(byte status, String message) {
+        return status == Status.OVERLOADED ? new OverloadedException(message) : new RemoteRuntimeException(message);
+    }
+
     // id param should be removed
     public <T> T use(int id, Class<T> type) {
         if (!type.isInterface())
@@ -141,6 +632,114 @@ public final class PulseClient implements AutoCloseable {
         }
     }
 
+    /**
+     * Serializes calls on the calling thread instead of the connection's write thread.
+     */
+    public void setEncodeOnCaller(boolean encodeOnCaller) {
+        this.encodeOnCaller = encodeOnCaller;
+    }
+
+    public boolean isEncodeOnCaller() {
+        return encodeOnCaller;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+
+        for (var endpoint : this.endpoints) endpoint.connection().setFlushPolicy(flushPolicy);
+    }
+
+    public @Nullable EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * Drives connections opened from now on by the given event loops instead of dedicated threads.
+     */
+    public void setEventLoopGroup(@Nullable EventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    public int getMaxInFlightCalls() {
+        return calls.capacity();
+    }
+
+    public long getTimeout(TimeUnit unit) {
+        return unit.convert(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Fails calls with a {@link DeadlineExceededException} if no response arrived within the timeout,
+     * unless their method has its own {@link Timeout}. The server stops working on them as well.
+     *
+     * @param timeout the timeout, or zero to wait forever
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) throw new IllegalArgumentException("timeout < 0");
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    public @Nullable NearCache getNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * Caches responses of {@link Cached} methods, without a cache they are called every time.
+     */
+    public void setNearCache(@Nullable NearCache nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * Called by generated clients, hedged calls of {@link Idempotent} methods do not take the allocation-free path.
+     */
+    public boolean isHedging() {
+        return hedger != null;
+    }
+
+    public @Nullable HedgePolicy getHedgePolicy() {
+        var hedger = this.hedger;
+        return hedger == null ? null : hedger.policy();
+    }
+
+    /**
+     * Sends calls still waiting for their response to a second server as well, the first response wins and
+     * the other call is cancelled. Applies only to calls of {@link Idempotent}, {@link SingleFlight} and
+     * {@link Cached} methods, never to batches.
+     *
+     * @param hedgePolicy the policy, or {@code null} to never hedge
+     */
+    public void setHedgePolicy(@Nullable HedgePolicy hedgePolicy) {
+        this.hedger = hedgePolicy == null ? null : new Hedger(hedgePolicy);
+    }
+
+    /**
+     * @return how many calls were hedged under the current policy
+     */
+    public long getHedgedCalls() {
+        var hedger = this.hedger;
+        return hedger == null ? 0 : hedger.hedges();
+    }
+
+    public @Nullable Path getSharedMemoryDirectory() {
+        return sharedMemoryDirectory;
+    }
+
+    /**
+     * Moves the frames of connections opened from now on to shared memory rings created in the given directory,
+     * if the server runs on the same host and accepts ring files from that directory.
+     * Such connections always run dedicated threads.
+     *
+     * @see PulseServer#setSharedMemoryDirectory(Path)
+     */
+    public void setSharedMemoryDirectory(@Nullable Path sharedMemoryDirectory) {
+        this.sharedMemoryDirectory = sharedMemoryDirectory;
+    }
+
     public <T> void registerType(Type<T> type) {
         typeMap.put(type.asClass(), type);
     }
@@ -157,4 +756,119 @@ public final class PulseClient implements AutoCloseable {
     public DefiningClassLoader getClassLoader() {
         return classLoader;
     }
+
+    /**
+     * A pooled connection with the number of calls awaiting a response on it.
+     */
+    record Endpoint(Connection connection, AtomicInteger inFlight) {
+    }
+
+    /**
+     * Hands the frames of the connections to the processor given to the client, or takes them as responses.
+     * Calls of a closed connection are failed either way.
+     */
+    private final class ConnectionProcessor implements Connection.Processor {
+        private final Connection.@Nullable Processor processor;
+
+        ConnectionProcessor(Connection.@Nullable Processor processor) {
+            this.processor = processor;
+        }
+
+        @Override
+        public void process(Connection connection, Buffer buffer) {
+            if (processor != null) {
+                processor.process(connection, buffer);
+            } else {
+                PulseClient.this.process(connection, buffer);
+            }
+        }
+
+        @Override
+        public void closed(Connection connection) {
+            PulseClient.this.closed(connection);
+            if (processor != null) processor.closed(connection);
+        }
+
+        @Override
+        public void readComplete(Connection connection) {
+            if (processor != null) processor.readComplete(connection);
+        }
+    }
+
+    /**
+     * A call awaiting its response.
+     */
+    sealed interface Callback permits PendingCall, SyncCall {
+        /**
+         * @return the connection the call was sent over
+         */
+        Endpoint endpoint();
+
+        /**
+         * Fails the call, no response will arrive.
+         */
+        void abort(RuntimeException cause);
+    }
+
+    private static final class PendingCall extends CompletableFuture<Buffer> implements Callback {
+        final Endpoint endpoint;
+        int callbackId;
+        volatile TimerWheel.@Nullable Timeout timeout;
+
+        PendingCall(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        void cancelTimeout() {
+            var timeout = this.timeout;
+            if (timeout != null) timeout.cancel();
+        }
+
+        @Override
+        public Endpoint endpoint() {
+            return endpoint;
+        }
+
+        @Override
+        public void abort(RuntimeException cause) {
+            cancelTimeout();
+            completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * A call that may be hedged, completed by whichever of its calls succeeds first.
+     */
+    private final class HedgedCall extends CompletableFuture<Buffer> {
+        private final Hedger hedger;
+        private final PendingCall primary;
+        private final long start;
+        volatile @Nullable PendingCall hedge;
+
+        HedgedCall(Hedger hedger, PendingCall primary, long start) {
+            this.hedger = hedger;
+            this.primary = primary;
+            this.start = start;
+        }
+
+        void completed(PendingCall call, @Nullable Buffer buffer, @Nullable Throwable e) {
+            var other = call == primary ? hedge : primary;
+
+            if (e != null) {
+                // the other call may still succeed, whichever fails last fails the call
+                if (other != null && !other.isDone()) return;
+                completeExceptionally(e);
+                return;
+            }
+
+            assert buffer != null;
+            if (!complete(buffer)) {
+                buffer.release();
+                return;
+            }
+
+            hedger.record(System.nanoTime() - start);
+            if (other != null) abandon(other);
+        }
+    }
 }
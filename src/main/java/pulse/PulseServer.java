@@ -6,37 +6,58 @@ import org.jetbrains.annotations.Nullable;
 import pulse.network.Acceptor;
 import pulse.network.Buffer;
 import pulse.network.Connection;
+import pulse.network.EventLoopGroup;
+import pulse.network.FlushPolicy;
 import pulse.network.Type;
 import pulse.util.DefiningClassLoader;
+import pulse.util.TimerWheel;
 import pulse.util.WaitGroup;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.file.Path;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 
-public final class PulseServer implements AutoCloseable, Runnable {
+public final class PulseServer implements AutoCloseable, Runnable, Connection.Processor {
+    private static final Executor INLINE = Runnable::run;
+
     private final DefiningClassLoader classLoader = new DefiningClassLoader();
+
     private final Executor executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Executor> executors = new ConcurrentHashMap<>();
 
     // TODO: handshake with checksum comparison? schemas?
     // private final Map<Class<?>, CodeGen.@Nullable Handle<?>> classToHandleMap = new IdentityHashMap<>();
-    private final Int2ObjectMap<CodeGen.@Nullable Handle<?>> idToHandleMap = new Int2ObjectArrayMap<>();
+    private final Int2ObjectMap<@Nullable Service> idToServiceMap = new Int2ObjectArrayMap<>();
     private final Map<Class<?>, Type<?>> typeMap = new IdentityHashMap<>();
 
     private final WaitGroup waitGroup = new WaitGroup();
     private final Acceptor acceptor;
 
+    // nobody else learns about them
+    private final LongAdder oneWayFailures = new LongAdder();
+    private final LongAdder responses = new LongAdder(), flushes = new LongAdder();
+
+    private volatile boolean encodeOnCaller = false;
+    private volatile @Nullable AdmissionControl admission = null;
+    private volatile @Nullable FairScheduler scheduler = null;
+
     public PulseServer(int port) throws IOException {
         this(new InetSocketAddress(port));
     }
 
     public PulseServer(SocketAddress bind) throws IOException {
-        this.acceptor = new Acceptor(bind, waitGroup, this::process);
+        this.acceptor = new Acceptor(bind, waitGroup, this);
     }
 
     @Override
@@ -53,43 +74,290 @@ public final class PulseServer implements AutoCloseable, Runnable {
         waitGroup.await();
     }
 
+    @Override
     public void process(Connection connection, Buffer buffer) {
+        var session = session(connection);
+        session.reading = true;
+
         int callbackId = buffer.readInt();
+        if (callbackId == CallTable.NO_CALLBACK) {
+            processOneWay(connection, buffer);
+            return;
+        }
 
+        // what is left of the client's deadline, zero without one
+        int timeoutMicros = buffer.readVarInt();
         int serviceId = buffer.readVarInt();
-        var handle = idToHandleMap.get(serviceId);
-        if (handle == null) throw new IllegalStateException("No implementation found");
 
-        // check is in generated code
-        int methodId = buffer.readVarInt();
+        // a batch is admitted as the calls it holds
+        int count = 1;
+        if (serviceId == Batch.SERVICE_ID) {
+            count = buffer.readVarInt();
+            if (count < 0 || count > Batch.MAX_SIZE) throw new IllegalArgumentException("bad batch size: " + count);
+        }
+        int permits = Math.max(1, count);
+
+        var admission = this.admission;
+        if (admission != null && !admission.tryAcquire(permits)) {
+            respond(session, callbackId, overloaded(callbackId));
+            return;
+        }
+
+        long deadline = timeoutMicros > 0 ? System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(timeoutMicros) : 0;
+        var call = new ServerCall(session.calls, callbackId, deadline, admission, permits,
+                admission == null ? null : () -> respond(session, callbackId, overloaded(callbackId)));
+        if (timeoutMicros > 0) call.timeout = TimerWheel.shared().schedule(call::cancel, timeoutMicros, TimeUnit.MICROSECONDS);
+
+        final CompletableFuture<Buffer.Writable> result;
+        try {
+            result = serviceId == Batch.SERVICE_ID
+                    ? invokeBatch(session, callbackId, count, buffer, call)
+                    : invoke(session, callbackId, serviceId, buffer, call);
+        } catch (Throwable e) {
+            call.finish();
+            throw e;
+        }
+
+        result.whenComplete((payload, e) -> {
+            // the client gave up on it already
+            if (!call.finish()) return;
 
-        var slice = buffer.slice(buffer.getReadIndex(), buffer.readable());
-        handle.pulse$process(callbackId, methodId, slice, executor).whenComplete((payload, e) -> {
             Buffer.Writable response;
 
             if (e == null) {
                 response = buf -> {
                     buf.writeInt(callbackId);
-                    buf.writeBoolean(true);
+                    buf.writeByte(Status.SUCCESS);
                     payload.writeSelfInto(buf);
                 };
             } else {
                 //noinspection CallToPrintStackTrace
                 e.printStackTrace();
 
-                response = buf -> {
-                    buf.writeInt(callbackId);
-                    buf.writeBoolean(false);
-                    buf.writeUtf8(e.getMessage());
-                };
+                response = failure(callbackId, e);
+            }
+
+            respond(session, callbackId, response);
+        });
+    }
+
+    private void respond(Session session, int callbackId, Buffer.Writable response) {
+        responses.increment();
+
+        var connection = session.connection;
+        if (encodeOnCaller) {
+            // serialize on the worker that completed the call
+            Buffer frames;
+            try {
+                frames = Connection.encode(response);
+            } catch (Throwable t) {
+                //noinspection CallToPrintStackTrace
+                t.printStackTrace();
+
+                frames = Connection.encode(failure(callbackId, t));
+            }
+
+            if (!connection.writeEncoded(frames)) frames.release();
+        } else {
+            connection.write(response);
+        }
+
+        // completed while the read thread processes a read, flushed together with the others once it is processed
+        if (Thread.currentThread() == session.reader && session.reading) {
+            session.unflushed = true;
+        } else {
+            flush(connection);
+        }
+    }
+
+    private void flush(Connection connection) {
+        if (connection.flush()) flushes.increment();
+    }
+
+    @Override
+    public void readComplete(Connection connection) {
+        if (!(connection.getAttachment() instanceof Session session)) return;
+
+        session.reading = false;
+        if (session.unflushed) {
+            session.unflushed = false;
+            flush(connection);
+        }
+    }
+
+    /**
+     * Runs a call without a deadline or a response, it outlives the connection.
+     */
+    private void processOneWay(Connection connection, Buffer buffer) {
+        final int serviceId = buffer.readVarInt();
+        if (serviceId == Hedger.CANCEL_SERVICE_ID) {
+            // the call lost to its hedge, it might have finished already
+            var call = session(connection).calls.get(buffer.readInt());
+            if (call != null) call.cancel();
+            return;
+        }
+
+        // nobody learns about a rejection but the counter
+        final AdmissionControl admission = this.admission;
+        if (admission != null && !admission.tryAcquire(1)) {
+            oneWayFailures.increment();
+            return;
+        }
+        final long start = System.nanoTime();
+
+        final CompletableFuture<Buffer.Writable> result;
+        try {
+            result = invoke(session(connection), CallTable.NO_CALLBACK, serviceId, buffer, null);
+        } catch (Throwable e) {
+            if (admission != null) admission.cancelled(1);
+            oneWayFailures.increment();
+            return;
+        }
+
+        result.whenComplete((_, e) -> {
+            if (admission != null) admission.completed(System.nanoTime() - start, 1);
+            if (e != null) oneWayFailures.increment();
+        });
+    }
+
+    /**
+     * @param call the call to cancel the handler with, {@code null} for one-way calls
+     */
+    private CompletableFuture<Buffer.Writable> invoke(Session session, int callbackId, int serviceId, Buffer buffer, @Nullable ServerCall call) {
+        var service = idToServiceMap.get(serviceId);
+        if (service == null) throw new IllegalStateException("No implementation found");
+
+        // check is in generated code
+        int methodId = buffer.readVarInt();
+        var executor = service.executor(methodId);
+        // inline handlers run on the read thread right away, which must never be interrupted
+        if (executor != INLINE) {
+            var scheduler = this.scheduler;
+            if (scheduler != null) {
+                var flow = session.flow(scheduler, serviceId);
+                executor = scheduler.on(flow, Math.toIntExact(buffer.readable()), call == null ? 0 : call.deadline, executor);
+            }
+            if (call != null) executor = call.on(executor);
+        }
+
+        // arguments are decoded before pulse$process returns, so the frame does not need to be retained
+        var slice = buffer.slice(buffer.getReadIndex(), buffer.readable());
+        return service.handle().pulse$process(callbackId, methodId, slice, executor);
+    }
+
+    /**
+     * Starts all calls of a batch at once, the response carries a result or failure for each of them.
+     */
+    private CompletableFuture<Buffer.Writable> invokeBatch(Session session, int callbackId, int count, Buffer buffer, ServerCall call) {
+        @SuppressWarnings("unchecked") final CompletableFuture<Buffer.Writable>[] results = new CompletableFuture[count];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.readInt();
+            if (length < 0 || length > buffer.readable()) throw new IllegalArgumentException("bad batch item length: " + length);
+
+            var item = buffer.slice(buffer.getReadIndex(), length);
+            item.setWriteIndex(length);
+            buffer.setReadIndex(buffer.getReadIndex() + length);
+
+            // a broken call fails alone
+            try {
+                results[i] = invoke(session, callbackId, item.readVarInt(), item, call);
+            } catch (Throwable e) {
+                results[i] = CompletableFuture.failedFuture(e);
             }
+        }
 
-            connection.writeAndFlush(response);
+        return CompletableFuture.allOf(results).<Buffer.Writable>handle((_, _) -> buf -> {
+            buf.writeVarInt(results.length);
+            for (var result : results) {
+                if (result.state() == Future.State.SUCCESS) {
+                    buf.writeBoolean(true);
+                    long start = buf.getWriteIndex();
+                    buf.writeInt(0);
+                    result.resultNow().writeSelfInto(buf);
+                    buf.setInt(start, (int) (buf.getWriteIndex() - start - Integer.BYTES));
+                } else {
+                    var e = result.exceptionNow();
+                    //noinspection CallToPrintStackTrace
+                    e.printStackTrace();
+
+                    buf.writeBoolean(false);
+                    buf.writeUtf8(String.valueOf(e.getMessage()));
+                }
+            }
         });
     }
 
+    /**
+     * Cancels the calls still running for the connection, nobody is there to receive their responses.
+     */
+    @Override
+    public void closed(Connection connection) {
+        if (!(connection.getAttachment() instanceof Session session)) return;
+
+        for (var call : session.calls.values().toArray(ServerCall[]::new)) call.cancel();
+    }
+
+    private static Session session(Connection connection) {
+        // attached by the read thread, which is the only one processing frames of the connection
+        if (connection.getAttachment() instanceof Session session) return session;
+
+        var session = new Session(connection);
+        connection.setAttachment(session);
+        return session;
+    }
+
+    private static Buffer.Writable failure(int callbackId, Throwable e) {
+        return buf -> {
+            buf.writeInt(callbackId);
+            buf.writeByte(Status.FAILURE);
+            buf.writeUtf8(String.valueOf(e.getMessage()));
+        };
+    }
+
+    private static Buffer.Writable overloaded(int callbackId) {
+        return buf -> {
+            buf.writeInt(callbackId);
+            buf.writeByte(Status.OVERLOADED);
+            buf.writeUtf8("Server overloaded");
+        };
+    }
+
+    /**
+     * @return the executor of each method by its id, as chosen by {@link Execution}
+     */
+    private Executor[] executors(Class<?> type) {
+        var methods = CodeGen.methods(type);
+        var executors = new Executor[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            var execution = methods[i].getAnnotation(Execution.class);
+            if (execution == null) execution = type.getAnnotation(Execution.class);
+
+            executors[i] = execution == null ? executor : switch (execution.value()) {
+                case INLINE -> INLINE;
+                case VIRTUAL_THREAD -> executor;
+                case POOL -> {
+                    var pool = this.executors.get(execution.executor());
+                    if (pool == null)
+                        throw new IllegalArgumentException("No executor registered as '" + execution.executor() + "': " + methods[i]);
+                    yield pool;
+                }
+            };
+        }
+        return executors;
+    }
+
+    /**
+     * Makes an executor available to services exported from now on, for methods with an {@link Execution} of
+     * {@link Execution.Mode#POOL} that names it. The server does not shut it down.
+     */
+    public void registerExecutor(String name, Executor executor) {
+        executors.put(name, executor);
+    }
+
     // id param should be replaced
     public <T> void export(int id, Class<T> type, Supplier<T> implementation) {
+        if (id < 0)
+            throw new IllegalArgumentException("Negative ids are reserved for batches and cancellations: " + id);
         if (!type.isInterface())
             throw new IllegalArgumentException("Must be an interface: " + type);
         try {
@@ -99,13 +367,101 @@ public final class PulseServer implements AutoCloseable, Runnable {
             var newType = classLoader.define(generatedTypeName, bytes, 0, bytes.length);
             //noinspection unchecked
             var handle = (CodeGen.Handle<T>) newType.getConstructors()[0].newInstance(this, instance, typeMap);
-            idToHandleMap.put(id, handle);
+            idToServiceMap.put(id, new Service(handle, executors(type)));
             // classToHandleMap.put(type, handle);
         } catch (Throwable e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Serializes responses on the worker thread instead of the connection's write thread.
+     */
+    public void setEncodeOnCaller(boolean encodeOnCaller) {
+        this.encodeOnCaller = encodeOnCaller;
+    }
+
+    public boolean isEncodeOnCaller() {
+        return encodeOnCaller;
+    }
+
+    /**
+     * @return how often a response woke up the write thread of its connection, at most one;
+     * lower means more responses shared a single write
+     */
+    public double getFlushesPerResponse() {
+        long responses = this.responses.sum();
+        return responses == 0 ? 0 : (double) flushes.sum() / responses;
+    }
+
+    public long getResponses() {
+        return responses.sum();
+    }
+
+    public @Nullable FairScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Queues calls per connection and service and runs them in turn, without a scheduler they run in arrival order.
+     */
+    public void setScheduler(@Nullable FairScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public @Nullable AdmissionControl getAdmissionControl() {
+        return admission;
+    }
+
+    /**
+     * Rejects calls beyond what the server can handle with an {@link OverloadedException} on the client,
+     * without one every call is accepted.
+     */
+    public void setAdmissionControl(@Nullable AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    /**
+     * @return how many {@link OneWay} calls failed or were rejected so far
+     */
+    public long getOneWayFailures() {
+        return oneWayFailures.sum();
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return acceptor.getFlushPolicy();
+    }
+
+    /**
+     * Sets the flush policy of connections accepted from now on.
+     */
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        acceptor.setFlushPolicy(flushPolicy);
+    }
+
+    public @Nullable EventLoopGroup getEventLoopGroup() {
+        return acceptor.getEventLoopGroup();
+    }
+
+    /**
+     * Drives connections accepted from now on by the given event loops instead of dedicated threads.
+     * {@link Execution.Mode#INLINE} calls then run on the loop thread and hold up every connection it serves.
+     */
+    public void setEventLoopGroup(@Nullable EventLoopGroup eventLoopGroup) {
+        acceptor.setEventLoopGroup(eventLoopGroup);
+    }
+
+    public @Nullable Path getSharedMemoryDirectory() {
+        return acceptor.getSharedMemoryDirectory();
+    }
+
+    /**
+     * Lets same-host clients move their frames to shared memory rings created in the given directory.
+     */
+    public void setSharedMemoryDirectory(@Nullable Path sharedMemoryDirectory) {
+        acceptor.setSharedMemoryDirectory(sharedMemoryDirectory);
+    }
+
     public <T> void registerType(Type<T> type) {
         typeMap.put(type.asClass(), type);
     }
@@ -122,4 +478,45 @@ public final class PulseServer implements AutoCloseable, Runnable {
     public DefiningClassLoader getClassLoader() {
         return classLoader;
     }
+
+    private record Service(CodeGen.Handle<?> handle, Executor[] executors) {
+        Executor executor(int methodId) {
+            // unknown methods are rejected by the generated code
+            return methodId >= 0 && methodId < executors.length ? executors[methodId] : INLINE;
+        }
+    }
+
+    /**
+     * What the server keeps per connection.
+     */
+    private static final class Session {
+        private final Connection connection;
+        private final Map<Integer, ServerCall> calls = new ConcurrentHashMap<>();
+
+        // created by the read thread, which sets the flags while it processes the frames of a read
+        private final Thread reader = Thread.currentThread();
+        private boolean reading, unflushed;
+
+        // owned by the read thread, the flows belong to the scheduler
+        private final Int2ObjectMap<FairScheduler.Flow> flows = new Int2ObjectArrayMap<>();
+        private @Nullable FairScheduler scheduler;
+
+        Session(Connection connection) {
+            this.connection = connection;
+        }
+
+        FairScheduler.Flow flow(FairScheduler scheduler, int serviceId) {
+            if (this.scheduler != scheduler) {
+                flows.clear();
+                this.scheduler = scheduler;
+            }
+
+            var flow = flows.get(serviceId);
+            if (flow == null) {
+                flow = scheduler.flow(connection.getRemoteAddress(), serviceId);
+                flows.put(serviceId, flow);
+            }
+            return flow;
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package pulse;
+
+import org.jetbrains.annotations.Nullable;
+import pulse.util.TimerWheel;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * A request being handled by the server, cancelled once its deadline passes or its connection closes.
+ * <p>
+ * The handlers run through {@link #on}, which remembers their worker threads, so that cancelling
+ * interrupts them. A cancelled call sends no response, the client has stopped waiting for it.
+ * The calls of a connection are kept by their callback id, so that the client can cancel them as well.
+ * <p>
+ * Under {@link AdmissionControl}, a call whose handler waited too long for a thread is shed instead of run.
+ * Handlers of a call that was cancelled or whose deadline passed before they started never run.
+ */
+final class ServerCall {
+    private final Map<Integer, ServerCall> calls;
+    private final int callbackId;
+    private final @Nullable AdmissionControl admission;
+    // one per call of a batch
+    private final int permits;
+    private final @Nullable Runnable onShed;
+    private final long arrival = System.nanoTime();
+    // zero without one
+    final long deadline;
+
+    // more than one for a batch
+    private final ArrayList<Thread> threads = new ArrayList<>(1);
+    private volatile boolean cancelled, finished;
+    volatile TimerWheel.@Nullable Timeout timeout;
+
+    /**
+     * @param deadline  the {@link System#nanoTime()} by which the client stops waiting, zero without one
+     * @param admission the control the call was admitted by, if any
+     * @param permits   the permits it was admitted with
+     * @param onShed    sends the overloaded response once the call is shed
+     */
+    ServerCall(Map<Integer, ServerCall> calls, int callbackId, long deadline,
+               @Nullable AdmissionControl admission, int permits, @Nullable Runnable onShed) {
+        this.calls = calls;
+        this.callbackId = callbackId;
+        this.deadline = deadline;
+        this.admission = admission;
+        this.permits = permits;
+        this.onShed = onShed;
+        calls.put(callbackId, this);
+    }
+
+    /**
+     * @return the executor running handlers of this call on the given one
+     */
+    Executor on(Executor executor) {
+        return task -> execute(executor, task);
+    }
+
+    private void execute(Executor executor, Runnable task) {
+        executor.execute(() -> {
+            long now = System.nanoTime();
+            // the timer might not have caught up yet
+            if (deadline != 0 && now - deadline >= 0) cancel();
+            if (admission != null && admission.shouldShed(now - arrival)) {
+                shed();
+                return;
+            }
+
+            synchronized (this) {
+                // nobody waits for the answer anymore
+                if (cancelled) return;
+                threads.add(Thread.currentThread());
+            }
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    threads.remove(Thread.currentThread());
+                    // a pooled worker must not carry our interrupt over to its next task
+                    //noinspection ResultOfMethodCallIgnored
+                    Thread.interrupted();
+                }
+            }
+        });
+    }
+
+    void cancel() {
+        synchronized (this) {
+            if (cancelled || finished) return;
+            cancelled = true;
+            for (var thread : threads) thread.interrupt();
+        }
+        release();
+        if (admission != null) admission.cancelled(permits);
+    }
+
+    /**
+     * Gives up on the call, the handler never runs. The other handlers of a batch are interrupted.
+     */
+    private void shed() {
+        synchronized (this) {
+            if (cancelled || finished) return;
+            cancelled = true;
+            for (var thread : threads) thread.interrupt();
+        }
+        release();
+
+        assert admission != null && onShed != null;
+        admission.shed(permits);
+        onShed.run();
+    }
+
+    /**
+     * @return whether the response is to be sent, {@code false} if the call was cancelled
+     */
+    boolean finish() {
+        synchronized (this) {
+            if (cancelled) return false;
+            finished = true;
+        }
+        release();
+        if (admission != null) admission.completed(System.nanoTime() - arrival, permits);
+        return true;
+    }
+
+    private void release() {
+        var timeout = this.timeout;
+        if (timeout != null) timeout.cancel();
+        calls.remove(callbackId, this);
+    }
+}
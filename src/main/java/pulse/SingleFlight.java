@@ -0,0 +1,15 @@
+package pulse;
+
+import java.lang.annotation.*;
+
+/**
+ * Lets concurrent calls of an idempotent method share one request when their encoded arguments are identical,
+ * all of them receive the result of the first. No {@code equals} or {@code hashCode} is needed on argument types.
+ * <p>
+ * Calls joining a request already in flight share its deadline.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SingleFlight {
+}
@@ -0,0 +1,15 @@
+package pulse;
+
+/**
+ * The byte following the callback id of a response.
+ */
+final class Status {
+    static final byte FAILURE = 0, SUCCESS = 1;
+    /**
+     * The server rejected the call without running it, followed by a message like a failure.
+     */
+    static final byte OVERLOADED = 2;
+
+    private Status() {
+    }
+}
@@ -0,0 +1,175 @@
+package pulse;
+
+import org.jetbrains.annotations.Nullable;
+import pulse.network.Buffer;
+import pulse.network.Connection;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A blocking call of a generated client, reused by its thread for one call after another so that
+ * the common path allocates nothing: the stub writes the request straight into a pooled frame, the thread parks
+ * until the read thread hands it the response frame, and the stub decodes the result from that frame in place.
+ * <p>
+ * A call that did not end with a response is never reused, its frame might still be queued.
+ *
+ * @see PulseClient#syncCall(long)
+ */
+public final class SyncCall extends Connection.Encoded implements PulseClient.Callback {
+    private final PulseClient client;
+    private final Thread thread = Thread.currentThread();
+
+    // owned by the calling thread, the frame is published to the write thread by the queue
+    private @Nullable Buffer frame;
+    private PulseClient.@Nullable Endpoint endpoint;
+    private int callbackId;
+    private long deadline, timeoutNanos;
+
+    private volatile @Nullable Buffer response;
+    private volatile @Nullable RuntimeException failure;
+    private volatile boolean done, abandoned;
+
+    SyncCall(PulseClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Prepares the call before it enters the call table.
+     */
+    void begin(PulseClient.Endpoint endpoint, long timeoutNanos) {
+        this.endpoint = endpoint;
+        this.timeoutNanos = timeoutNanos;
+        this.deadline = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+        this.response = null;
+        this.failure = null;
+        this.done = false;
+    }
+
+    /**
+     * Starts the request frame once the call got its id.
+     */
+    void start(int callbackId) {
+        this.callbackId = callbackId;
+
+        var frame = Connection.beginFrame();
+        frame.writeInt(callbackId);
+        frame.writeVarInt(timeoutNanos > 0 ? (int) Math.clamp(TimeUnit.NANOSECONDS.toMicros(timeoutNanos), 1, Integer.MAX_VALUE) : 0);
+        this.frame = frame;
+    }
+
+    /**
+     * @return the frame the stub writes the service, the method and the arguments into
+     */
+    public Buffer buffer() {
+        assert frame != null;
+        return frame;
+    }
+
+    /**
+     * Sends the call and waits for its response.
+     *
+     * @return the response frame positioned at the result, to be released by the caller
+     */
+    public Buffer await() throws InterruptedException, ExecutionException {
+        var frame = this.frame;
+        var endpoint = this.endpoint;
+        assert frame != null && endpoint != null;
+
+        Connection.endFrame(frame);
+        var connection = endpoint.connection();
+        if (!connection.writeEncodedAndFlush(this)) {
+            frame.release();
+            abandon();
+            throw new ExecutionException(new IllegalStateException("Failed to queue the packet"));
+        }
+
+        // closed before the call entered the table, so the connection's closed hook missed it
+        if (!connection.isActive() && abandon())
+            throw new ExecutionException(new IllegalStateException("Connection closed: " + connection.getRemoteAddress()));
+
+        boolean interrupted = false;
+        while (!done) {
+            long remaining = deadline == 0 ? Long.MAX_VALUE : deadline - System.nanoTime();
+            if (remaining <= 0) {
+                if (abandon()) {
+                    if (interrupted) Thread.currentThread().interrupt();
+                    throw new ExecutionException(new DeadlineExceededException(
+                            "No response within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms"));
+                }
+                // the response is being handed over
+                Thread.onSpinWait();
+            } else if (deadline == 0) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, remaining);
+            }
+
+            if (Thread.interrupted()) {
+                if (abandon()) throw new InterruptedException();
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        var failure = this.failure;
+        if (failure instanceof CancellationException e) throw e;
+        if (failure != null) throw new ExecutionException(failure);
+
+        var response = this.response;
+        assert response != null;
+        return response;
+    }
+
+    /**
+     * Called by the read thread with the response frame.
+     */
+    void complete(Buffer buffer) {
+        var status = buffer.readByte();
+        if (status == Status.SUCCESS) {
+            // decoded in place by the caller, who releases it
+            this.response = buffer.retain();
+        } else {
+            this.failure = PulseClient.failure(status, buffer.readUtf8());
+        }
+        this.done = true;
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void abort(RuntimeException cause) {
+        // the frame might still be queued
+        this.abandoned = true;
+        this.failure = cause;
+        this.done = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Gives up on the call unless its response is being handed over already.
+     */
+    private boolean abandon() {
+        if (!client.remove(callbackId, this)) return false;
+        this.abandoned = true;
+        return true;
+    }
+
+    @Override
+    public PulseClient.Endpoint endpoint() {
+        var endpoint = this.endpoint;
+        assert endpoint != null;
+        return endpoint;
+    }
+
+    boolean isAbandoned() {
+        return abandoned;
+    }
+
+    @Override
+    public Buffer frames() {
+        assert frame != null;
+        return frame;
+    }
+}
@@ -0,0 +1,19 @@
+package pulse;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline of calls to a service method, overriding the client's default timeout.
+ * The remaining time is sent along with the call, so the server stops working on it once the client gave up.
+ *
+ * @see PulseClient#setTimeout(long, TimeUnit)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Timeout {
+    long value();
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
@@ -1,5 +1,6 @@
 package pulse.network;
 
+import org.jetbrains.annotations.Nullable;
 import pulse.util.WaitGroup;
 
 import java.io.IOException;
@@ -8,6 +9,7 @@ import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 
 public final class Acceptor implements AutoCloseable, Runnable {
     private final WaitGroup waitGroup;
@@ -19,6 +21,9 @@ public final class Acceptor implements AutoCloseable, Runnable {
     private int port;
 
     private volatile boolean active;
+    private volatile FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;
+    private volatile @Nullable EventLoopGroup eventLoopGroup = null;
+    private volatile @Nullable Path sharedMemoryDirectory = null;
 
     public Acceptor(SocketAddress socketAddress, WaitGroup waitGroup, Connection.Processor processor) throws IOException {
         final ProtocolFamily family = switch (socketAddress) {
@@ -58,7 +63,10 @@ public final class Acceptor implements AutoCloseable, Runnable {
     void accept() throws IOException {
         final SocketChannel channel = serverSocket.accept();
 
-        final Connection connection = new Connection(channel, processor);
+        final EventLoopGroup group = eventLoopGroup;
+        final Connection connection = new Connection(channel, processor, group == null ? null : group.next());
+        connection.setFlushPolicy(flushPolicy);
+        connection.setSharedMemoryDirectory(sharedMemoryDirectory);
         connection.run();
     }
 
@@ -109,6 +117,42 @@ public final class Acceptor implements AutoCloseable, Runnable {
         return active;
     }
 
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    /**
+     * Sets the flush policy of connections accepted from now on.
+     */
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    public @Nullable EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * Drives connections accepted from now on by the given event loops instead of dedicated threads.
+     */
+    public void setEventLoopGroup(@Nullable EventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    public @Nullable Path getSharedMemoryDirectory() {
+        return sharedMemoryDirectory;
+    }
+
+    /**
+     * Lets same-host clients of connections accepted from now on move their frames to shared memory rings,
+     * created in the given directory. Connections driven by an {@link EventLoopGroup} always decline.
+     *
+     * @see Connection#openSharedMemory(SocketChannel, Connection.Processor, Path)
+     */
+    public void setSharedMemoryDirectory(@Nullable Path sharedMemoryDirectory) {
+        this.sharedMemoryDirectory = sharedMemoryDirectory;
+    }
+
     private void startVirtualThread(Runnable runnable, String name) {
         waitGroup.add(1);
         Thread.ofVirtual().name(name).start(() -> {
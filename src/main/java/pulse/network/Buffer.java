@@ -1,11 +1,16 @@
 package pulse.network;
 
+import org.jetbrains.annotations.Nullable;
+import pulse.util.ObjectPool;
+
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.Serial;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteOrder;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
@@ -14,9 +19,24 @@ import java.nio.charset.StandardCharsets;
 public final class Buffer implements AutoCloseable {
     public static final ByteOrder BYTE_ORDER = ByteOrder.nativeOrder();
 
+    private static final VarHandle REF_COUNT;
+
+    static {
+        try {
+            REF_COUNT = MethodHandles.lookup().findVarHandle(Buffer.class, "refCount", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     final Arena arena;
     final MemorySegment segment;
 
+    // slices share the reference count of the buffer owning the memory
+    private final @Nullable Buffer owner;
+    private final @Nullable ObjectPool<Buffer> pool;
+    private volatile int refCount = 1;
+
     long readIndex, writeIndex;
 
     public Buffer(long capacity) {
@@ -29,8 +49,21 @@ public final class Buffer implements AutoCloseable {
     }
 
     public Buffer(Arena arena, MemorySegment segment) {
+        this(arena, segment, null, null);
+    }
+
+    /**
+     * Creates a buffer that returns itself to {@code pool} once its last reference is released.
+     */
+    public Buffer(Arena arena, long capacity, ObjectPool<Buffer> pool) {
+        this(arena, arena.allocate(capacity), null, pool);
+    }
+
+    private Buffer(Arena arena, MemorySegment segment, @Nullable Buffer owner, @Nullable ObjectPool<Buffer> pool) {
         this.arena = arena;
         this.segment = segment;
+        this.owner = owner;
+        this.pool = pool;
     }
 
     @Override
@@ -47,7 +80,50 @@ public final class Buffer implements AutoCloseable {
 
     public Buffer slice(long index, long length) {
         var slice = segment.asSlice(index, length);
-        return new Buffer(arena, slice);
+        return new Buffer(arena, slice, owner(), null);
+    }
+
+    /**
+     * Keeps the memory of this buffer (and of every other slice of it) from being reused
+     * until a matching {@link #release()}.
+     */
+    public Buffer retain() {
+        var owner = owner();
+        int count;
+        do {
+            count = owner.refCount;
+            if (count < 1) throw new IllegalStateException("refCount < 1");
+        } while (!REF_COUNT.compareAndSet(owner, count, count + 1));
+        return this;
+    }
+
+    public void release() {
+        var owner = owner();
+        int count = (int) REF_COUNT.getAndAdd(owner, -1) - 1;
+        if (count == 0) {
+            var pool = owner.pool;
+            if (pool != null) {
+                owner.refCount = 1;
+                pool.add(owner);
+            }
+        } else if (count < 0) {
+            throw new IllegalStateException("refCount < 0");
+        }
+    }
+
+    public int refCount() {
+        return owner().refCount;
+    }
+
+    /**
+     * @return whether someone besides the original owner still holds this memory
+     */
+    public boolean isShared() {
+        return owner().refCount > 1;
+    }
+
+    private Buffer owner() {
+        return owner == null ? this : owner;
     }
 
     public void ensureWritable(long length) {
@@ -231,6 +307,14 @@ public final class Buffer implements AutoCloseable {
         writeIndex += 4;
     }
 
+    public int getInt(long index) {
+        return segment.get(INT_LAYOUT, index);
+    }
+
+    public void setInt(long index, int value) {
+        segment.set(INT_LAYOUT, index, value);
+    }
+
     public static final ValueLayout.OfLong LONG_LAYOUT = ValueLayout.JAVA_LONG.withOrder(BYTE_ORDER).withByteAlignment(1);
 
     public long readLong() {
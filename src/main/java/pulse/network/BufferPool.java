@@ -0,0 +1,46 @@
+package pulse.network;
+
+import pulse.util.ObjectPool;
+
+import java.lang.foreign.Arena;
+
+/**
+ * Power-of-two size classes for buffers larger than a single packet.
+ * <p>
+ * Buffers of {@link Connection#MAX_PACKET_SIZE} are served by {@link Connection#BUFFER_POOL},
+ * bigger ones are allocated in an automatic arena, so their memory is reclaimed once the pool drops them.
+ * Acquired buffers go back to their pool on the last {@link Buffer#release()}.
+ */
+public final class BufferPool {
+    private static final int MIN_SHIFT = 12; // 4 KiB
+    private static final int MAX_SHIFT = 27; // 128 MiB
+
+    public static final long MAX_CAPACITY = 1L << MAX_SHIFT;
+
+    private static final ObjectPool<Buffer>[] POOLS;
+
+    static {
+        //noinspection unchecked
+        POOLS = new ObjectPool[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+            final long capacity = 1L << shift;
+            final int index = shift - MIN_SHIFT;
+            POOLS[index] = ObjectPool.pool(() -> new Buffer(Arena.ofAuto(), capacity, POOLS[index]), Buffer::clear);
+        }
+    }
+
+    private BufferPool() {
+    }
+
+    public static Buffer acquire(long capacity) {
+        if (capacity <= Connection.MAX_PACKET_SIZE) return Connection.BUFFER_POOL.get();
+        return pool(capacity).get();
+    }
+
+    private static ObjectPool<Buffer> pool(long capacity) {
+        if (capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("capacity > " + MAX_CAPACITY + ": " + capacity);
+        int shift = Math.max(MIN_SHIFT, 64 - Long.numberOfLeadingZeros(capacity - 1));
+        return POOLS[shift - MIN_SHIFT];
+    }
+}
@@ -8,14 +8,21 @@ import pulse.util.WaitGroup;
 import java.io.EOFException;
 import java.io.IOException;
 import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 public final class Connection implements AutoCloseable, Runnable {
     public static final int PACKET_HEADER_SIZE = 2;
@@ -23,88 +30,122 @@ public final class Connection implements AutoCloseable, Runnable {
     public static final int MAX_PACKET_SIZE = 1024;
     public static final int MAX_PACKET_PAYLOAD_SIZE = MAX_PACKET_SIZE - PACKET_HEADER_SIZE;
 
+    // set on every frame of a multi-frame message except the last one
+    public static final short CONTINUATION_FLAG = (short) 0x8000;
+    public static final int MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+
     public static short readHeader(Buffer buffer) {
         return buffer.readShort();
     }
 
+    public static int frameLength(short header) {
+        return header & ~CONTINUATION_FLAG & 0xFFFF;
+    }
+
+    public static boolean isContinued(short header) {
+        return (header & CONTINUATION_FLAG) != 0;
+    }
+
     public static void setHeader(Buffer buffer, long index, short length) {
         buffer.setShort(index, length);
     }
 
     public static final Arena MEM_ARENA = Arena.ofShared();
-    public static final ObjectPool<Buffer> BUFFER_POOL = ObjectPool.pool(() -> new Buffer(MEM_ARENA, MAX_PACKET_SIZE), Buffer::clear);
+    public static final ObjectPool<Buffer> BUFFER_POOL = ObjectPool.pool(() -> new Buffer(MEM_ARENA, MAX_PACKET_SIZE, Connection.BUFFER_POOL), Buffer::clear);
+
+    private static final long MIN_FRAGMENTED_CAPACITY = 4L * MAX_PACKET_SIZE;
+    private static final long MAX_FRAGMENTED_CAPACITY = MAX_MESSAGE_SIZE + 2L * MAX_PACKET_SIZE
+            + (long) MAX_MESSAGE_SIZE / MAX_PACKET_PAYLOAD_SIZE * PACKET_HEADER_SIZE;
+    private static final int FRAGMENTED_GROWTH = 16;
+    // what the recent fragmented packets of a thread took, so that one huge packet does not size all later ones
+    private static final ThreadLocal<long[]> FRAGMENTED_CAPACITY = ThreadLocal.withInitial(() -> new long[]{MIN_FRAGMENTED_CAPACITY});
 
     private static final int WRITE_QUEUE_CHUNK_SIZE = 64;
+    private static final int MAX_GATHERED_BUFFERS = 64;
 
     private final MpscUnboundedXaddArrayQueue<Buffer.Writable> packetQueue = new MpscUnboundedXaddArrayQueue<>(WRITE_QUEUE_CHUNK_SIZE);
     private final WaitGroup waitGroup = new WaitGroup();
 
     private final SocketChannel channel;
     private final SocketAddress remoteAddress;
-    private final Processor processor;
 
-    private final Thread readThread, writeThread;
-    private final ReentrantLock writeLock = new ReentrantLock();
-    private final Condition writeCondition = writeLock.newCondition();
+    // null when driven by an event loop
+    private final @Nullable Thread readThread, writeThread;
+    private final @Nullable EventLoop eventLoop;
+    // owned by the event loop
+    private @Nullable SelectionKey key;
+    private boolean detached;
+    // set by flushing threads, cleared by the write thread right before it drains the queue
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
 
     private volatile boolean active;
+    private volatile FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;
+
+    // owned by the write thread
+    private final ArrayDeque<Buffer> pendingWrites = new ArrayDeque<>();
+    private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_BUFFERS];
 
-    private @Nullable Buffer writeLeftover = null;
+    // written by the write thread only
+    private volatile long writeSyscalls, writtenPackets;
+
+    // owned by the read thread
+    private final FrameReader frameReader;
+
+    // replaces the socket for frames once a same-host peer agreed to share memory, dedicated threads only
+    private volatile @Nullable SharedMemoryChannel sharedMemory;
+    private volatile @Nullable Path sharedMemoryDirectory;
+
+    private volatile @Nullable Object attachment;
 
     public Connection(SocketChannel channel, Processor processor) throws IOException {
+        this(channel, processor, null);
+    }
+
+    /**
+     * @param eventLoop the loop to drive this connection, or {@code null} to run dedicated read and write threads
+     */
+    public Connection(SocketChannel channel, Processor processor, @Nullable EventLoop eventLoop) throws IOException {
         this.configureSocket(channel);
 
         this.channel = channel;
         this.remoteAddress = channel.getRemoteAddress();
-        this.processor = processor;
-
-        this.readThread = this.unstartedVirtualThread(this::readLoop, "pulse-network-read");
-        this.writeThread = this.unstartedVirtualThread(this::writeLoop, "pulse-network-write");
+        this.frameReader = new FrameReader(this, processor);
+        this.eventLoop = eventLoop;
+
+        if (eventLoop == null) {
+            this.readThread = this.unstartedVirtualThread(this::readLoop, "pulse-network-read");
+            this.writeThread = this.unstartedVirtualThread(this::writeLoop, "pulse-network-write");
+        } else {
+            eventLoop.configure(channel);
+            this.readThread = null;
+            this.writeThread = null;
+        }
     }
 
     @Override
     public void run() {
-        // throws exception if the thread was already started
-        readThread.start();
-        writeThread.start();
-
         active = true;
-        waitGroup.add(2);
-    }
-
-    void read(Buffer buffer) throws IOException {
-        int _ = buffer.readFrom(channel);
 
-        while (buffer.readable() > 0) {
-            var anchor = buffer.readIndex;
-            var length = readHeader(buffer);
-
-            if (length < 0)
-                throw new IllegalArgumentException("length < 0");
-            if (length > MAX_PACKET_PAYLOAD_SIZE)
-                throw new IllegalArgumentException("too large packet");
-
-            if (length > buffer.readable()) {
-                buffer.readIndex = anchor;
-                break; // not enough data
-            }
-
-            var payload = buffer.slice(buffer.readIndex, length);
-            buffer.readIndex += length;
-
-            payload.writeIndex += length;
-            processor.process(this, payload);
+        if (eventLoop != null) {
+            waitGroup.add(1);
+            eventLoop.register(this);
+            return;
         }
 
-        buffer.compactAfterRead();
+        assert readThread != null && writeThread != null;
+        waitGroup.add(2);
+
+        // throws exception if the thread was already started
+        readThread.start();
+        writeThread.start();
     }
 
     void readLoop() {
-        try (var holder = BUFFER_POOL.hold()) {
-            var buffer = holder.get();
+        try {
             while (active) {
                 try {
-                    read(buffer);
+                    var sharedMemory = this.sharedMemory;
+                    frameReader.read(sharedMemory != null ? sharedMemory : channel);
                 } catch (ClosedChannelException ignored) {
                     break; // we closed socket during read
                 } catch (EOFException e) {
@@ -120,82 +161,173 @@ public final class Connection implements AutoCloseable, Runnable {
                     break;
                 }
             }
+        } finally {
+            frameReader.close();
         }
     }
 
     void write() throws IOException {
-        writeLock.lock();
-        try {
-            // spurious wakeups?
-            writeCondition.await();
-            writeSync();
-        } catch (InterruptedException e) {
+        // park until someone requests a flush, spurious wakeups just re-check the flag
+        while (!flushRequested.get()) {
+            LockSupport.park(this);
+            checkInterrupted();
+        }
+
+        var policy = this.flushPolicy;
+        long start = System.nanoTime();
+        while (true) {
+            // clear before draining: a flush requested from now on is either drained below or wakes us up again
+            flushRequested.getAndSet(false);
+            encodeQueued();
+
+            if (!active || pendingWrites.isEmpty() || pendingWrites.size() >= MAX_GATHERED_BUFFERS) break;
+
+            long linger = policy.lingerNanos(pendingBytes(), System.nanoTime() - start);
+            if (linger <= 0) break;
+
+            // flushes during the window wake us up early to re-check the policy
+            LockSupport.parkNanos(this, linger);
+            checkInterrupted();
+        }
+
+        writeSync();
+    }
+
+    private static void checkInterrupted() {
+        if (Thread.interrupted()) {
             Thread.currentThread().interrupt();
-            throw new RuntimeException("#write interrupted!", e);
-        } finally {
-            writeLock.unlock();
+            throw new RuntimeException("#write interrupted!");
         }
     }
 
-    void writeSync() throws IOException {
-        var leftover = this.writeLeftover;
-        if (leftover != null) {
-            if (leftover.writeInto(channel)) {
-                this.writeLeftover = null;
-                BUFFER_POOL.add(leftover);
-            } else {
-                // failed to write the whole leftover, try again next flush
-                return;
+    private long pendingBytes() {
+        long bytes = 0;
+        for (var buffer : pendingWrites) bytes += buffer.readable();
+        return bytes;
+    }
+
+    /**
+     * @return whether everything queued was written
+     */
+    boolean writeSync() throws IOException {
+        while (true) {
+            encodeQueued();
+            if (pendingWrites.isEmpty()) return true;
+
+            if (!writePending()) {
+                // the socket does not accept more data, try again next flush
+                return false;
             }
         }
+    }
 
-        assert this.writeLeftover == null;
-
+    private void encodeQueued() {
         var queue = packetQueue;
-        if (queue.isEmpty()) return;
+        var pending = pendingWrites;
 
-        long startIndex;
         Buffer.Writable packet;
-
-        var buffer = BUFFER_POOL.get();
+        Buffer batch = null;
         try {
-            while ((packet = queue.peek()) != null) {
-                startIndex = buffer.writeIndex;
-                buffer.writeIndex += PACKET_HEADER_SIZE;
-
-                try {
-                    packet.writeSelfInto(buffer);
-                    setHeader(buffer, startIndex, (short) (buffer.writeIndex - (startIndex + PACKET_HEADER_SIZE)));
-
-                    queue.poll();
-                } catch (Buffer.OverflowException e) {
-                    buffer.writeIndex = startIndex;
-
-                    if (startIndex == 0) {
-                        // queue.poll();
-                        throw new IllegalStateException("Packet is too large: " + packet);
+            while (pending.size() < MAX_GATHERED_BUFFERS && (packet = queue.poll()) != null) {
+                writtenPackets++;
+
+                var frames = framesOf(packet);
+                if (frames != null) {
+                    // serialized by the caller, only has to be moved to the socket
+                    if (batch != null && batch.readable() > 0) {
+                        pending.add(batch);
+                        batch = null;
                     }
+                    pending.add(frames);
+                    continue;
+                }
 
-                    if (buffer.writeInto(channel)) {
-                        buffer.clear();
-                    } else {
-                        this.writeLeftover = buffer;
-                        // failed to write the whole buffer, try again next flush
-                        return;
-                    }
+                if (batch == null) batch = BUFFER_POOL.get();
+                if (encodeInto(batch, packet)) continue;
+
+                if (batch.readable() > 0) {
+                    pending.add(batch);
+                    batch = BUFFER_POOL.get();
+                    if (encodeInto(batch, packet)) continue;
                 }
-            }
 
-            if (buffer.readable() > 0 && !buffer.writeInto(channel)) {
-                // failed to write the whole buffer, try again next flush
-                this.writeLeftover = buffer;
-            } else {
-                BUFFER_POOL.add(buffer);
+                // does not fit into a single frame, split it into continuation frames
+                pending.add(encodeFragmented(packet));
             }
         } catch (Throwable t) {
-            BUFFER_POOL.add(buffer);
+            if (batch != null) batch.release();
             throw t;
         }
+
+        if (batch != null) {
+            if (batch.readable() > 0) {
+                pending.add(batch);
+            } else {
+                batch.release();
+            }
+        }
+    }
+
+    /**
+     * Writes as many pending buffers as possible with one gathering write per {@link #MAX_GATHERED_BUFFERS}.
+     *
+     * @return whether all pending buffers were written
+     */
+    private boolean writePending() throws IOException {
+        var pending = pendingWrites;
+        var gathered = this.gathered;
+
+        while (!pending.isEmpty()) {
+            int count = 0;
+            for (var buffer : pending) {
+                gathered[count++] = buffer.segment.asSlice(buffer.readIndex, buffer.readable()).asByteBuffer();
+                if (count == gathered.length) break;
+            }
+
+            var sharedMemory = this.sharedMemory;
+            long written = sharedMemory != null ? sharedMemory.write(gathered, 0, count) : channel.write(gathered, 0, count);
+            writeSyscalls++;
+            Arrays.fill(gathered, 0, count, null);
+
+            if (written == -1) throw new EOFException("Disconnected");
+            if (written == 0) return false;
+
+            written(written);
+        }
+
+        return true;
+    }
+
+    /**
+     * Releases the pending buffers covered by {@code written} bytes.
+     */
+    void written(long written) {
+        var pending = pendingWrites;
+
+        Buffer buffer;
+        while ((buffer = pending.peek()) != null && written >= buffer.readable()) {
+            written -= buffer.readable();
+            pending.poll();
+            buffer.release();
+        }
+
+        // partially written, the rest goes with the next write
+        if (buffer != null) buffer.readIndex += written;
+    }
+
+    private static boolean encodeInto(Buffer buffer, Buffer.Writable packet) {
+        var startIndex = buffer.writeIndex;
+        buffer.writeIndex += PACKET_HEADER_SIZE;
+
+        try {
+            packet.writeSelfInto(buffer);
+        } catch (Buffer.OverflowException e) {
+            buffer.writeIndex = startIndex;
+            return false;
+        }
+
+        setHeader(buffer, startIndex, (short) (buffer.writeIndex - (startIndex + PACKET_HEADER_SIZE)));
+        return true;
     }
 
     void writeLoop() {
@@ -216,32 +348,274 @@ public final class Connection implements AutoCloseable, Runnable {
             }
         }
 
+        // the reader notices the closed channel, by then nobody may consider the connection usable
+        active = false;
         try {
             channel.close();
         } catch (IOException ignored) {
             // disconnect
         }
 
-        if (writeLeftover != null) {
-            BUFFER_POOL.add(writeLeftover);
-            writeLeftover = null;
-        }
+        releaseWrites();
 
         // System.out.println("disconnected");
     }
 
+    private void releaseWrites() {
+        Buffer buffer;
+        while ((buffer = pendingWrites.poll()) != null) {
+            buffer.release();
+        }
+
+        Buffer.Writable packet;
+        while ((packet = packetQueue.poll()) != null) {
+            var frames = framesOf(packet);
+            if (frames != null) frames.release();
+        }
+    }
+
+    /**
+     * @return the frames of a packet its sender encoded already, or {@code null} if the write thread serializes it
+     */
+    private static @Nullable Buffer framesOf(Buffer.Writable packet) {
+        return switch (packet) {
+            case EncodedFrames(var frames) -> frames;
+            case EncodedPacket(var encoded) -> encoded.frames();
+            default -> null;
+        };
+    }
+
+    void attach(Selector selector) {
+        try {
+            this.key = channel.register(selector, SelectionKey.OP_READ, this);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void handleRead() {
+        try {
+            frameReader.read(channel);
+            // idle connections do not hold on to a receive buffer
+            frameReader.releaseIfDrained();
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    void handleWrite() {
+        var key = this.key;
+        if (key == null) return;
+
+        flushRequested.getAndSet(false);
+        try {
+            boolean written = writeSync();
+            if (!active) {
+                detach();
+                return;
+            }
+
+            // wait until the socket accepts more data
+            key.interestOps(written ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    void fail(Throwable e) {
+        report(e);
+        detach();
+    }
+
+    static void report(Throwable e) {
+        boolean isExpected = e instanceof ClosedChannelException || e instanceof EOFException
+                || e instanceof IOException && ("Connection reset".equals(e.getMessage()) || "Broken pipe".equals(e.getMessage()));
+        if (!isExpected) {
+            //noinspection CallToPrintStackTrace
+            e.printStackTrace();
+        }
+    }
+
+    Buffer receiveBuffer() {
+        return frameReader.receiveBuffer();
+    }
+
+    void received(int count) throws IOException {
+        frameReader.received(count);
+    }
+
+    /**
+     * Encodes the queued packets and describes up to {@link #MAX_GATHERED_BUFFERS} pending buffers
+     * as {@code struct iovec}s for a gathering write submitted by the event loop.
+     *
+     * @return the number of iovecs, zero if there is nothing to write
+     */
+    int gatherPending(MemorySegment iovecs) {
+        flushRequested.getAndSet(false);
+        encodeQueued();
+
+        int count = 0;
+        for (var buffer : pendingWrites) {
+            IoUring.setIovec(iovecs, count, buffer.segment.address() + buffer.readIndex, buffer.readable());
+            if (++count == MAX_GATHERED_BUFFERS) break;
+        }
+        if (count > 0) writeSyscalls++;
+        return count;
+    }
+
+    void detach() {
+        if (detached) return;
+        detached = true;
+        active = false;
+
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // disconnect
+        }
+
+        frameReader.close();
+        releaseWrites();
+        waitGroup.done();
+    }
+
+    /**
+     * Serializes a packet into a pooled buffer ready to be sent as is, so that
+     * the caller's thread does the encoding instead of the write loop.
+     *
+     * @see #writeEncoded(Buffer)
+     */
+    public static Buffer encode(Buffer.Writable packet) {
+        var buffer = BUFFER_POOL.get();
+        try {
+            if (encodeInto(buffer, packet)) return buffer;
+        } catch (Throwable t) {
+            buffer.release();
+            throw t;
+        }
+
+        buffer.release();
+        return encodeFragmented(packet);
+    }
+
+    /**
+     * Serializes a packet into continuation frames, moving its bytes apart in place to make room for the headers.
+     * The buffer is sized after the recent fragmented packets of the thread, so that a sender repeating its sizes
+     * serializes once.
+     */
+    static Buffer encodeFragmented(Buffer.Writable packet) {
+        var hint = FRAGMENTED_CAPACITY.get();
+        long capacity = hint[0];
+        while (true) {
+            var frames = BufferPool.acquire(capacity);
+            var acquired = frames.capacity();
+            // the first frame's header and the length prefix go in front, the other headers in the room left at the end
+            var region = frames.slice(0, acquired - headerRoom(acquired));
+            region.writeIndex = PACKET_HEADER_SIZE + Integer.BYTES;
+            try {
+                packet.writeSelfInto(region);
+            } catch (Buffer.OverflowException e) {
+                frames.release();
+                if (acquired >= MAX_FRAGMENTED_CAPACITY)
+                    throw new IllegalStateException("Packet is too large: " + packet);
+
+                // every attempt serializes from scratch, so grow by more than doubling
+                capacity = Math.min(acquired * FRAGMENTED_GROWTH, MAX_FRAGMENTED_CAPACITY);
+                continue;
+            } catch (Throwable t) {
+                frames.release();
+                throw t;
+            }
+
+            // the length prefix is sent as a part of the first fragment
+            var total = region.writeIndex - PACKET_HEADER_SIZE;
+            var length = total - Integer.BYTES;
+            if (length > MAX_MESSAGE_SIZE) {
+                frames.release();
+                throw new IllegalStateException("Packet is too large: " + packet);
+            }
+            frames.setInt(PACKET_HEADER_SIZE, (int) length);
+
+            var frameCount = (int) ((total + MAX_PACKET_PAYLOAD_SIZE - 1) / MAX_PACKET_PAYLOAD_SIZE);
+            // back to front, each fragment moves right by the headers in front of it, never over an unmoved one
+            for (int i = frameCount - 1; i >= 0; i--) {
+                long offset = (long) i * MAX_PACKET_PAYLOAD_SIZE;
+                long start = (long) i * MAX_PACKET_SIZE;
+                var fragment = Math.min(MAX_PACKET_PAYLOAD_SIZE, total - offset);
+                if (i > 0) {
+                    MemorySegment.copy(frames.segment, PACKET_HEADER_SIZE + offset, frames.segment, start + PACKET_HEADER_SIZE, fragment);
+                }
+                setHeader(frames, start, (short) (i < frameCount - 1 ? fragment | CONTINUATION_FLAG : fragment));
+            }
+
+            frames.writeIndex = total + (long) frameCount * PACKET_HEADER_SIZE;
+            // follows larger packets at once and smaller ones by halving
+            var taken = frames.writeIndex + headerRoom(frames.writeIndex);
+            hint[0] = Math.max(MIN_FRAGMENTED_CAPACITY, Math.max(taken, hint[0] / 2));
+            return frames;
+        }
+    }
+
+    /**
+     * @return the bytes to keep free in a buffer of {@code capacity} for the headers of the frames it can hold
+     */
+    private static long headerRoom(long capacity) {
+        return (capacity + MAX_PACKET_PAYLOAD_SIZE - 1) / MAX_PACKET_PAYLOAD_SIZE * PACKET_HEADER_SIZE;
+    }
+
+    /**
+     * Answers an upgrade request of the peer, on the read thread before anything else was exchanged.
+     */
+    void upgrade(String name) throws IOException {
+        if (sharedMemory != null) throw new IOException("Already upgraded");
+        var directory = eventLoop == null ? sharedMemoryDirectory : null;
+        this.sharedMemory = SharedMemoryChannel.accept(channel, directory, name);
+    }
+
+    /**
+     * Opens a connection whose frames go through memory shared with the peer instead of the socket,
+     * falling back to the socket if the peer declines. Only peers on the same host can accept, the socket stays
+     * open to detect when the peer is gone and to wake it up when it is idle.
+     *
+     * @param channel   a connected socket nothing was sent over yet
+     * @param directory where the ring file is created, it has to be the server's shared memory directory
+     * @see Acceptor#setSharedMemoryDirectory(Path)
+     */
+    public static Connection openSharedMemory(SocketChannel channel, Processor processor, Path directory) throws IOException {
+        var sharedMemory = SharedMemoryChannel.offer(channel, directory, SharedMemoryChannel.DEFAULT_CAPACITY);
+
+        var connection = new Connection(channel, processor);
+        connection.sharedMemory = sharedMemory;
+        return connection;
+    }
+
     @Override
     public void close() {
         active = false;
-        flush();
+
+        var sharedMemory = this.sharedMemory;
+        if (sharedMemory != null) sharedMemory.shutdown();
+
+        flushRequested.set(true);
+        wakeWriter();
     }
 
-    public void flush() {
-        writeLock.lock();
-        try {
-            writeCondition.signal();
-        } finally {
-            writeLock.unlock();
+    /**
+     * @return whether this woke up the writer, {@code false} if a flush was pending already
+     */
+    public boolean flush() {
+        // concurrent flushes combine into a single wakeup of the write thread
+        if (flushRequested.get() || flushRequested.getAndSet(true)) return false;
+        wakeWriter();
+        return true;
+    }
+
+    private void wakeWriter() {
+        if (eventLoop != null) {
+            eventLoop.flush(this);
+        } else {
+            LockSupport.unpark(writeThread);
         }
     }
 
@@ -255,10 +629,53 @@ public final class Connection implements AutoCloseable, Runnable {
         return result;
     }
 
+    /**
+     * Queues frames produced by {@link #encode(Buffer.Writable)}. The connection takes over the buffer
+     * only if this returns {@code true}.
+     */
+    public boolean writeEncoded(Buffer frames) {
+        return packetQueue.relaxedOffer(new EncodedFrames(frames));
+    }
+
+    public boolean writeEncodedAndFlush(Buffer frames) {
+        var result = writeEncoded(frames);
+        flush();
+        return result;
+    }
+
+    /**
+     * Queues a packet its sender encoded already, without allocating. The connection takes over
+     * {@link Encoded#frames()} only if this returns {@code true}.
+     */
+    public boolean writeEncodedAndFlush(Encoded packet) {
+        var result = packetQueue.relaxedOffer(packet.queued);
+        flush();
+        return result;
+    }
+
+    /**
+     * Starts a single frame in a pooled packet buffer, for packets known to fit into it.
+     *
+     * @see #endFrame(Buffer)
+     */
+    public static Buffer beginFrame() {
+        var buffer = BUFFER_POOL.get();
+        buffer.writeIndex = PACKET_HEADER_SIZE;
+        return buffer;
+    }
+
+    public static void endFrame(Buffer frame) {
+        setHeader(frame, 0, (short) (frame.writeIndex - PACKET_HEADER_SIZE));
+    }
+
     public void await() {
         waitGroup.await();
     }
 
+    public @Nullable EventLoop getEventLoop() {
+        return eventLoop;
+    }
+
     public SocketChannel getChannel() {
         return channel;
     }
@@ -271,9 +688,98 @@ public final class Connection implements AutoCloseable, Runnable {
         return active;
     }
 
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    public boolean isSharedMemory() {
+        return sharedMemory != null;
+    }
+
+    /**
+     * Accepts upgrade requests to shared memory rings from same-host peers, or declines them if {@code null}.
+     */
+    void setSharedMemoryDirectory(@Nullable Path sharedMemoryDirectory) {
+        this.sharedMemoryDirectory = sharedMemoryDirectory;
+    }
+
+    public @Nullable Object getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * Associates state of the layer above with this connection, such as the calls a server is handling for it.
+     */
+    public void setAttachment(@Nullable Object attachment) {
+        this.attachment = attachment;
+    }
+
+    public double getPacketsPerSyscall() {
+        long syscalls = writeSyscalls;
+        return syscalls == 0 ? 0 : (double) writtenPackets / syscalls;
+    }
+
+    public long getWriteSyscalls() {
+        return writeSyscalls;
+    }
+
+    public long getWrittenPackets() {
+        return writtenPackets;
+    }
+
+    /**
+     * Handles a single inbound message.
+     * <p>
+     * The buffer is only valid until {@code process} returns. To hand it over to another thread,
+     * {@link Buffer#retain()} it here and {@link Buffer#release()} it once done; the read loop then moves on
+     * to a fresh pooled buffer instead of overwriting the retained frame.
+     */
     @FunctionalInterface
     public interface Processor {
         void process(Connection connection, Buffer buffer);
+
+        /**
+         * Called on the read thread once the connection stopped reading, no more frames follow.
+         */
+        default void closed(Connection connection) {
+        }
+
+        /**
+         * Called on the read thread once the frames of a single read were processed, so that responses
+         * they produced right away can share a single flush.
+         */
+        default void readComplete(Connection connection) {
+        }
+    }
+
+    /**
+     * A packet queued with its frames, which the write thread takes exactly once.
+     * Reusable by the sender once it knows the packet was written, such as when it got the response.
+     */
+    public abstract static class Encoded {
+        // stands in for the packet in the write queue, made once so that reusing the packet allocates nothing
+        private final EncodedPacket queued = new EncodedPacket(this);
+
+        public abstract Buffer frames();
+    }
+
+    // stand in for pre-encoded frames in the write queue, the write thread only moves those to the socket
+    private record EncodedFrames(Buffer frames) implements Buffer.Writable {
+        @Override
+        public void writeSelfInto(Buffer buffer) {
+            throw new UnsupportedOperationException("already encoded");
+        }
+    }
+
+    private record EncodedPacket(Encoded encoded) implements Buffer.Writable {
+        @Override
+        public void writeSelfInto(Buffer buffer) {
+            throw new UnsupportedOperationException("already encoded");
+        }
     }
 
     private void configureSocket(SocketChannel channel) throws IOException {
@@ -0,0 +1,88 @@
+package pulse.network;
+
+import org.jctools.queues.MpscUnboundedXaddArrayQueue;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single platform thread driving any number of connections.
+ * <p>
+ * Reads, writes and processor calls of its connections all run on the loop thread,
+ * so processors must not block. Flushes requested during one iteration of the loop are combined into
+ * a single write per connection, {@link FlushPolicy flush policies} only apply to connections with their own write thread.
+ *
+ * @see EventLoopGroup
+ * @see SelectorEventLoop
+ * @see IoUringEventLoop
+ */
+public abstract sealed class EventLoop implements AutoCloseable, Runnable permits SelectorEventLoop, IoUringEventLoop {
+    private static final int QUEUE_CHUNK_SIZE = 64;
+
+    final Thread thread;
+
+    final MpscUnboundedXaddArrayQueue<Connection> registrations = new MpscUnboundedXaddArrayQueue<>(QUEUE_CHUNK_SIZE);
+    final MpscUnboundedXaddArrayQueue<Connection> flushes = new MpscUnboundedXaddArrayQueue<>(QUEUE_CHUNK_SIZE);
+    final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+
+    volatile boolean active;
+
+    EventLoop(String name) {
+        this.thread = Thread.ofPlatform().name(name).unstarted(this::loop);
+    }
+
+    @Override
+    public void run() {
+        active = true;
+        thread.start();
+    }
+
+    /**
+     * Prepares a channel before its connection is registered with this loop.
+     */
+    abstract void configure(SocketChannel channel) throws IOException;
+
+    abstract void loop();
+
+    /**
+     * Interrupts a blocking wait of the loop thread.
+     */
+    abstract void wakeupNow();
+
+    void register(Connection connection) {
+        registrations.relaxedOffer(connection);
+        wakeup();
+    }
+
+    void flush(Connection connection) {
+        flushes.relaxedOffer(connection);
+        wakeup();
+    }
+
+    private void wakeup() {
+        // the loop drains its queues before waiting again anyway
+        if (Thread.currentThread() == thread) return;
+        if (wakeupPending.get() || wakeupPending.getAndSet(true)) return;
+        wakeupNow();
+    }
+
+    @Override
+    public void close() {
+        active = false;
+        wakeupNow();
+    }
+
+    public void await() {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("#await interrupted!", e);
+        }
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+}
@@ -0,0 +1,62 @@
+package pulse.network;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of {@link EventLoop}s that connections are spread over round-robin.
+ * <p>
+ * An alternative to the default transport, which runs two virtual threads per connection:
+ * a handful of loop threads serve any number of mostly idle connections. The loops select over
+ * non-blocking channels unless io_uring is requested and {@link IoUringEventLoop#isAvailable() available}.
+ */
+public final class EventLoopGroup implements AutoCloseable {
+    private final EventLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public EventLoopGroup() throws IOException {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public EventLoopGroup(int size) throws IOException {
+        this(size, false);
+    }
+
+    /**
+     * @param ioUring whether to drive the connections through io_uring where it is available
+     */
+    public EventLoopGroup(int size, boolean ioUring) throws IOException {
+        if (size < 1) throw new IllegalArgumentException("size < 1");
+
+        boolean useIoUring = ioUring && IoUringEventLoop.isAvailable();
+        this.loops = new EventLoop[size];
+        for (int i = 0; i < size; i++) {
+            var name = "pulse-event-loop-" + i;
+            try {
+                loops[i] = useIoUring ? new IoUringEventLoop(name) : new SelectorEventLoop(name);
+            } catch (Throwable t) {
+                // the group is never returned, so nothing else would stop the loops already running
+                for (int j = 0; j < i; j++) loops[j].close();
+                throw t;
+            }
+            loops[i].run();
+        }
+    }
+
+    public boolean isIoUring() {
+        return loops[0] instanceof IoUringEventLoop;
+    }
+
+    public EventLoop next() {
+        return loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+    }
+
+    @Override
+    public void close() {
+        for (var loop : loops) loop.close();
+    }
+
+    public void await() {
+        for (var loop : loops) loop.await();
+    }
+}
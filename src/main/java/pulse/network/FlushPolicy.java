@@ -0,0 +1,62 @@
+package pulse.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long a connection keeps collecting packets after a flush before writing them out.
+ * Trades a few microseconds of latency for fewer, larger writes.
+ */
+public sealed interface FlushPolicy {
+    FlushPolicy IMMEDIATE = new Immediate();
+
+    /**
+     * Coalesces everything flushed within {@code delay} after the first flush.
+     */
+    static FlushPolicy delay(long delay, TimeUnit unit) {
+        return new Delay(unit.toNanos(delay));
+    }
+
+    /**
+     * Coalesces until at least {@code bytes} are pending, but no longer than {@code maxDelay}.
+     */
+    static FlushPolicy bytes(long bytes, long maxDelay, TimeUnit unit) {
+        return new Bytes(bytes, unit.toNanos(maxDelay));
+    }
+
+    /**
+     * @param pendingBytes encoded bytes waiting to be written
+     * @param elapsedNanos time since the first flush of the current write
+     * @return how long to wait for more packets, not positive to write right away
+     */
+    long lingerNanos(long pendingBytes, long elapsedNanos);
+
+    record Immediate() implements FlushPolicy {
+        @Override
+        public long lingerNanos(long pendingBytes, long elapsedNanos) {
+            return 0;
+        }
+    }
+
+    record Delay(long delayNanos) implements FlushPolicy {
+        public Delay {
+            if (delayNanos < 0) throw new IllegalArgumentException("delayNanos < 0");
+        }
+
+        @Override
+        public long lingerNanos(long pendingBytes, long elapsedNanos) {
+            return delayNanos - elapsedNanos;
+        }
+    }
+
+    record Bytes(long bytes, long maxDelayNanos) implements FlushPolicy {
+        public Bytes {
+            if (bytes < 1) throw new IllegalArgumentException("bytes < 1");
+            if (maxDelayNanos < 0) throw new IllegalArgumentException("maxDelayNanos < 0");
+        }
+
+        @Override
+        public long lingerNanos(long pendingBytes, long elapsedNanos) {
+            return pendingBytes >= bytes ? 0 : maxDelayNanos - elapsedNanos;
+        }
+    }
+}
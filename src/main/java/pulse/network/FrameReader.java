@@ -0,0 +1,235 @@
+package pulse.network;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static pulse.network.Connection.*;
+
+/**
+ * Splits the inbound byte stream of a connection into frames and hands complete messages to its processor.
+ * <p>
+ * Frames are dispatched as slices of the receive buffer, so they have to stay contiguous. Instead of moving
+ * the unread tail to the front after every read, the buffer is filled up to its end and compacted only once
+ * it cannot hold another full frame, or replaced when a processor retained a frame or the buffer is resized.
+ * Either way at most one partial frame is moved per buffer fill.
+ * <p>
+ * The buffer size follows the traffic: it grows after reads keep filling it and shrinks after a long run
+ * of small reads.
+ */
+final class FrameReader {
+    private static final long[] BUFFER_SIZES = {MAX_PACKET_SIZE, 4 * 1024, 16 * 1024, 64 * 1024};
+
+    private static final int GROW_THRESHOLD = 2;
+    private static final int SHRINK_THRESHOLD = 32;
+
+    private final Connection connection;
+    private final Connection.Processor processor;
+
+    private @Nullable Buffer buffer = null;
+    private int sizeIndex = 0;
+    private int growStreak, shrinkStreak;
+
+    private @Nullable Buffer reassembly = null;
+    private int reassemblyLength;
+
+    // an upgrade may only be asked for by the first frame, before the peer talked over the socket
+    private boolean framed;
+
+    FrameReader(Connection connection, Connection.Processor processor) {
+        this.connection = connection;
+        this.processor = processor;
+    }
+
+    /**
+     * Reads once from the channel and dispatches every complete message.
+     */
+    void read(ReadableByteChannel channel) throws IOException {
+        var buffer = receiveBuffer();
+
+        var offered = buffer.writable();
+        int count = buffer.readFrom(channel);
+        dispatch(buffer, offered, count);
+    }
+
+    /**
+     * Returns the buffer the next read fills from its write index on.
+     */
+    Buffer receiveBuffer() {
+        var buffer = this.buffer;
+        if (buffer == null) buffer = this.buffer = BufferPool.acquire(BUFFER_SIZES[sizeIndex]);
+        return buffer;
+    }
+
+    /**
+     * Dispatches every complete message after {@code count} bytes were stored into the {@link #receiveBuffer()}
+     * behind its write index, e.g. by the kernel.
+     */
+    void received(int count) throws IOException {
+        var buffer = receiveBuffer();
+
+        var offered = buffer.writable();
+        buffer.writeIndex += count;
+        dispatch(buffer, offered, count);
+    }
+
+    private void dispatch(Buffer buffer, long offered, int count) throws IOException {
+        adapt(offered, count);
+
+        decode(buffer);
+        this.buffer = prepareNextRead(buffer);
+        processor.readComplete(connection);
+    }
+
+    private void decode(Buffer buffer) throws IOException {
+        while (buffer.readable() >= PACKET_HEADER_SIZE) {
+            var anchor = buffer.readIndex;
+            var header = readHeader(buffer);
+            if (header == SharedMemoryChannel.UPGRADE_HEADER) {
+                if (framed) throw new IOException("Upgrade requested after the first frame");
+                if (!upgrade(buffer)) {
+                    buffer.readIndex = anchor;
+                    break; // not enough data
+                }
+                framed = true;
+                continue;
+            }
+            framed = true;
+
+            var length = frameLength(header);
+
+            if (length > MAX_PACKET_PAYLOAD_SIZE)
+                throw new IllegalArgumentException("too large packet");
+
+            if (length > buffer.readable()) {
+                buffer.readIndex = anchor;
+                break; // not enough data
+            }
+
+            var payload = buffer.slice(buffer.readIndex, length);
+            buffer.readIndex += length;
+
+            payload.writeIndex += length;
+
+            if (isContinued(header) || reassembly != null) {
+                reassemble(payload, isContinued(header));
+            } else {
+                processor.process(connection, payload);
+            }
+        }
+    }
+
+    private boolean upgrade(Buffer buffer) throws IOException {
+        if (buffer.readable() < Short.BYTES) return false;
+        var length = buffer.readShort() & 0xFFFF;
+        if (buffer.readable() < length) return false;
+
+        connection.upgrade(new String(buffer.readBytes(length), StandardCharsets.UTF_8));
+        return true;
+    }
+
+    private Buffer prepareNextRead(Buffer buffer) {
+        var size = BUFFER_SIZES[sizeIndex];
+        if (buffer.isShared() || buffer.capacity() != size) {
+            // a processor kept a frame or the buffer is resized, continue in a fresh buffer
+            var next = BufferPool.acquire(size);
+            var remaining = buffer.readable();
+            MemorySegment.copy(buffer.segment, buffer.readIndex, next.segment, 0, remaining);
+            next.writeIndex = remaining;
+
+            buffer.release();
+            return next;
+        }
+
+        if (buffer.readable() == 0) {
+            buffer.clear();
+        } else if (buffer.writable() < MAX_PACKET_SIZE) {
+            // a partial frame might not fit anymore
+            buffer.compactAfterRead();
+        }
+        return buffer;
+    }
+
+    private void adapt(long offered, int count) {
+        if (count >= offered) {
+            shrinkStreak = 0;
+            if (++growStreak >= GROW_THRESHOLD && sizeIndex < BUFFER_SIZES.length - 1) {
+                sizeIndex++;
+                growStreak = 0;
+            }
+        } else if (sizeIndex > 0 && count < BUFFER_SIZES[sizeIndex - 1] / 2) {
+            growStreak = 0;
+            if (++shrinkStreak >= SHRINK_THRESHOLD) {
+                sizeIndex--;
+                shrinkStreak = 0;
+            }
+        } else {
+            growStreak = 0;
+            shrinkStreak = 0;
+        }
+    }
+
+    private void reassemble(Buffer fragment, boolean continued) {
+        var message = this.reassembly;
+        if (message == null) {
+            // the first fragment is prefixed with the total length of the message
+            var length = fragment.readInt();
+            if (length <= MAX_PACKET_PAYLOAD_SIZE || length > MAX_MESSAGE_SIZE)
+                throw new IllegalArgumentException("bad message length: " + length);
+
+            message = this.reassembly = BufferPool.acquire(length);
+            this.reassemblyLength = length;
+        }
+
+        var length = fragment.readable();
+        if (message.writeIndex + length > reassemblyLength)
+            throw new IllegalArgumentException("message is longer than declared: " + reassemblyLength);
+
+        MemorySegment.copy(fragment.segment, fragment.readIndex, message.segment, message.writeIndex, length);
+        message.writeIndex += length;
+
+        if (continued) return;
+
+        this.reassembly = null;
+        try {
+            if (message.writeIndex != reassemblyLength)
+                throw new IllegalArgumentException("message is shorter than declared: " + reassemblyLength);
+
+            processor.process(connection, message);
+        } finally {
+            message.release();
+        }
+    }
+
+    /**
+     * Returns the receive buffer to its pool unless it holds a partial frame.
+     */
+    void releaseIfDrained() {
+        var buffer = this.buffer;
+        if (buffer != null && buffer.readable() == 0) {
+            buffer.release();
+            this.buffer = null;
+        }
+    }
+
+    void close() {
+        try {
+            processor.closed(connection);
+        } catch (Throwable e) {
+            Connection.report(e);
+        }
+
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+
+        if (reassembly != null) {
+            reassembly.release();
+            reassembly = null;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package pulse.network;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * A minimal binding of a Linux io_uring instance through foreign function downcalls, without JNI or liburing.
+ * <p>
+ * Everything but {@link #wakeup()} must be called from a single thread. Submissions are only queued by
+ * {@link #prepare} and handed to the kernel in one {@code io_uring_enter} call by {@link #submit}, which also
+ * waits for completions; {@link #drain} then consumes every completion that is ready.
+ */
+final class IoUring implements AutoCloseable {
+    static final byte OP_WRITEV = 2;
+    static final byte OP_READ = 22;
+    static final byte OP_RECV = 27;
+
+    static final long IOVEC_SIZE = 16;
+
+    // the same numbers on every architecture
+    private static final long SYS_IO_URING_SETUP = 425;
+    private static final long SYS_IO_URING_ENTER = 426;
+
+    private static final int IORING_ENTER_GETEVENTS = 1;
+    private static final long IORING_OFF_SQ_RING = 0L;
+    private static final long IORING_OFF_CQ_RING = 0x8000000L;
+    private static final long IORING_OFF_SQES = 0x10000000L;
+
+    private static final int PROT_READ_WRITE = 0x1 | 0x2;
+    private static final int MAP_SHARED_POPULATE = 0x01 | 0x8000;
+    private static final int EFD_CLOEXEC = 0x80000;
+
+    static final int EINTR = 4, EAGAIN = 11, EBUSY = 16, EPIPE = 32, ECONNRESET = 104;
+
+    // struct io_uring_params with the io_sqring_offsets at 40 and the io_cqring_offsets at 80
+    private static final long PARAMS_SIZE = 120;
+    private static final long SQ_OFFSETS = 40, CQ_OFFSETS = 80;
+    private static final long SQE_SIZE = 64, CQE_SIZE = 16;
+
+    private static final VarHandle INT_HANDLE = JAVA_INT.varHandle();
+
+    private static final StructLayout CALL_STATE = Linker.Option.captureStateLayout();
+    private static final VarHandle ERRNO = CALL_STATE.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+
+    private static final @Nullable Native NATIVE;
+    private static final @Nullable Throwable UNAVAILABILITY_CAUSE;
+
+    static {
+        Native lib = null;
+        Throwable cause = null;
+        try {
+            if (!System.getProperty("os.name", "").startsWith("Linux"))
+                throw new UnsupportedOperationException("io_uring requires Linux");
+
+            lib = new Native(Linker.nativeLinker());
+            // kernels without io_uring or with io_uring disabled fail right here
+            new IoUring(lib, 2).close();
+        } catch (Throwable t) {
+            lib = null;
+            cause = t;
+        }
+        NATIVE = lib;
+        UNAVAILABILITY_CAUSE = cause;
+    }
+
+    static boolean isAvailable() {
+        return NATIVE != null;
+    }
+
+    static @Nullable Throwable unavailabilityCause() {
+        return UNAVAILABILITY_CAUSE;
+    }
+
+    private final Native lib;
+    // automatic, so that an operation the kernel still completes after close cannot hit freed memory
+    private final Arena arena = Arena.ofAuto();
+    private final MemorySegment callState;
+
+    private final int fd;
+    private final MemorySegment sqRing, cqRing, sqes;
+    private final long sqTailOffset, sqHeadOffset, cqHeadOffset, cqTailOffset, cqesOffset;
+    private final int sqEntries, sqMask, cqMask;
+
+    // owned by the ring thread
+    private int sqTail, submitted, cqHead;
+
+    private final int wakeupFd;
+    private final MemorySegment wakeupBuffer, wakeupValue;
+    private volatile boolean closed;
+
+    IoUring(int entries) throws IOException {
+        this(nativeOrThrow(), entries);
+    }
+
+    private IoUring(Native lib, int entries) throws IOException {
+        this.lib = lib;
+        this.callState = arena.allocate(CALL_STATE);
+
+        var params = arena.allocate(PARAMS_SIZE, 8);
+        long result = syscall(SYS_IO_URING_SETUP, entries, params.address(), 0, 0, 0, 0);
+        if (result < 0) throw error("io_uring_setup", errno());
+        this.fd = (int) result;
+
+        int sqEntries = params.get(JAVA_INT, 0);
+        int cqEntries = params.get(JAVA_INT, 4);
+        long sqArrayOffset = params.get(JAVA_INT, SQ_OFFSETS + 24);
+        this.cqesOffset = params.get(JAVA_INT, CQ_OFFSETS + 20);
+
+        MemorySegment sqRing = null, cqRing = null, sqes = null;
+        try {
+            sqRing = mmap(sqArrayOffset + (long) sqEntries * Integer.BYTES, IORING_OFF_SQ_RING);
+            cqRing = mmap(cqesOffset + (long) cqEntries * CQE_SIZE, IORING_OFF_CQ_RING);
+            sqes = mmap(sqEntries * SQE_SIZE, IORING_OFF_SQES);
+
+            int wakeupFd = (int) lib.eventfd.invokeExact(callState, 0, EFD_CLOEXEC);
+            if (wakeupFd < 0) throw error("eventfd", errno());
+            this.wakeupFd = wakeupFd;
+        } catch (Throwable t) {
+            if (sqRing != null) munmap(sqRing);
+            if (cqRing != null) munmap(cqRing);
+            if (sqes != null) munmap(sqes);
+            closeFd(fd);
+            if (t instanceof IOException e) throw e;
+            throw new IOException("io_uring setup failed", t);
+        }
+        this.sqRing = sqRing;
+        this.cqRing = cqRing;
+        this.sqes = sqes;
+
+        this.sqEntries = sqEntries;
+        this.sqHeadOffset = params.get(JAVA_INT, SQ_OFFSETS);
+        this.sqTailOffset = params.get(JAVA_INT, SQ_OFFSETS + 4);
+        this.sqMask = sqRing.get(JAVA_INT, params.get(JAVA_INT, SQ_OFFSETS + 8));
+        this.cqHeadOffset = params.get(JAVA_INT, CQ_OFFSETS);
+        this.cqTailOffset = params.get(JAVA_INT, CQ_OFFSETS + 4);
+        this.cqMask = cqRing.get(JAVA_INT, params.get(JAVA_INT, CQ_OFFSETS + 8));
+
+        // ring slot i always points at entry i, so submitting only has to move the tail
+        for (int i = 0; i < sqEntries; i++) {
+            sqRing.set(JAVA_INT, sqArrayOffset + (long) i * Integer.BYTES, i);
+        }
+        this.sqTail = this.submitted = sqRing.get(JAVA_INT, sqTailOffset);
+        this.cqHead = cqRing.get(JAVA_INT, cqHeadOffset);
+
+        this.wakeupBuffer = arena.allocate(JAVA_LONG);
+        this.wakeupValue = arena.allocate(JAVA_LONG);
+        wakeupValue.set(JAVA_LONG, 0, 1L);
+    }
+
+    /**
+     * Queues an operation on {@code fd}, submitting what is queued already if the submission queue is full.
+     */
+    void prepare(byte opcode, int fd, long address, int length, long userData) throws IOException {
+        if (sqTail - (int) INT_HANDLE.getAcquire(sqRing, sqHeadOffset) >= sqEntries) {
+            submit(0);
+            if (sqTail - (int) INT_HANDLE.getAcquire(sqRing, sqHeadOffset) >= sqEntries)
+                throw new IOException("io_uring submission queue is full");
+        }
+
+        var sqes = this.sqes;
+        long offset = (sqTail & sqMask) * SQE_SIZE;
+        for (long i = 0; i < SQE_SIZE; i += Long.BYTES) {
+            sqes.set(JAVA_LONG, offset + i, 0L);
+        }
+        sqes.set(JAVA_BYTE, offset, opcode);
+        sqes.set(JAVA_INT, offset + 4, fd);
+        sqes.set(JAVA_LONG, offset + 16, address);
+        sqes.set(JAVA_INT, offset + 24, length);
+        sqes.set(JAVA_LONG, offset + 32, userData);
+        sqTail++;
+    }
+
+    /**
+     * Queues a read of the wakeup counter, completing with {@code userData} after the next {@link #wakeup()}.
+     */
+    void prepareWakeup(long userData) throws IOException {
+        prepare(OP_READ, wakeupFd, wakeupBuffer.address(), (int) JAVA_LONG.byteSize(), userData);
+    }
+
+    /**
+     * Submits everything queued and waits for at least {@code minComplete} completions.
+     *
+     * @return the number of submitted operations
+     */
+    int submit(int minComplete) throws IOException {
+        INT_HANDLE.setRelease(sqRing, sqTailOffset, sqTail);
+        while (true) {
+            long result = syscall(SYS_IO_URING_ENTER, fd, sqTail - submitted, minComplete,
+                    minComplete > 0 ? IORING_ENTER_GETEVENTS : 0, 0, 0);
+            if (result >= 0) {
+                submitted += (int) result;
+                return (int) result;
+            }
+
+            int errno = errno();
+            if (errno == EINTR) continue;
+            // the completion queue is full, it has to be drained first
+            if (errno == EAGAIN || errno == EBUSY) return 0;
+            throw error("io_uring_enter", errno);
+        }
+    }
+
+    /**
+     * Hands every available completion to the handler, with a negative errno as its result on failure.
+     *
+     * @return the number of completions
+     */
+    int drain(CompletionHandler handler) {
+        int start = cqHead;
+        int tail = (int) INT_HANDLE.getAcquire(cqRing, cqTailOffset);
+        try {
+            while (cqHead != tail) {
+                long offset = cqesOffset + (cqHead & cqMask) * CQE_SIZE;
+                long userData = cqRing.get(JAVA_LONG, offset);
+                int result = cqRing.get(JAVA_INT, offset + 8);
+                cqHead++;
+                handler.complete(userData, result);
+            }
+        } finally {
+            // hand the consumed entries back even if a handler failed
+            INT_HANDLE.setRelease(cqRing, cqHeadOffset, cqHead);
+        }
+        return cqHead - start;
+    }
+
+    /**
+     * Completes the pending {@link #prepareWakeup wakeup read}, may be called from any thread.
+     */
+    void wakeup() {
+        if (closed) return;
+        try {
+            long _ = (long) lib.write.invokeExact(wakeupFd, wakeupValue, JAVA_LONG.byteSize());
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void setIovec(MemorySegment iovecs, int index, long address, long length) {
+        long offset = index * IOVEC_SIZE;
+        iovecs.set(JAVA_LONG, offset, address);
+        iovecs.set(JAVA_LONG, offset + Long.BYTES, length);
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+
+        munmap(sqes);
+        munmap(cqRing);
+        munmap(sqRing);
+        closeFd(fd);
+        closeFd(wakeupFd);
+    }
+
+    private long syscall(long number, long a, long b, long c, long d, long e, long f) {
+        try {
+            return (long) lib.syscall.invokeExact(callState, number, a, b, c, d, e, f);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private MemorySegment mmap(long size, long offset) throws IOException {
+        MemorySegment address;
+        try {
+            address = (MemorySegment) lib.mmap.invokeExact(callState, MemorySegment.NULL, size,
+                    PROT_READ_WRITE, MAP_SHARED_POPULATE, fd, offset);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        if (address.address() == -1L) throw error("mmap", errno());
+        return address.reinterpret(size);
+    }
+
+    private void munmap(MemorySegment segment) {
+        try {
+            int _ = (int) lib.munmap.invokeExact(segment, segment.byteSize());
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private void closeFd(int fd) {
+        try {
+            int _ = (int) lib.close.invokeExact(fd);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private int errno() {
+        return (int) ERRNO.get(callState, 0L);
+    }
+
+    static IOException error(String call, int errno) {
+        return new IOException(call + " failed with errno " + errno);
+    }
+
+    private static Native nativeOrThrow() {
+        if (NATIVE == null) throw new UnsupportedOperationException("io_uring is not available", UNAVAILABILITY_CAUSE);
+        return NATIVE;
+    }
+
+    @FunctionalInterface
+    interface CompletionHandler {
+        void complete(long userData, int result);
+    }
+
+    private record Native(MethodHandle syscall, MethodHandle mmap, MethodHandle munmap,
+                          MethodHandle eventfd, MethodHandle write, MethodHandle close) {
+        Native(Linker linker) {
+            var libc = linker.defaultLookup();
+            var errno = Linker.Option.captureCallState("errno");
+            this(
+                    // long syscall(long number, ...), every argument is passed as a long
+                    linker.downcallHandle(libc.find("syscall").orElseThrow(),
+                            FunctionDescriptor.of(JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG),
+                            Linker.Option.firstVariadicArg(1), errno),
+                    linker.downcallHandle(libc.find("mmap").orElseThrow(),
+                            FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_LONG), errno),
+                    linker.downcallHandle(libc.find("munmap").orElseThrow(),
+                            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG)),
+                    linker.downcallHandle(libc.find("eventfd").orElseThrow(),
+                            FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_INT), errno),
+                    linker.downcallHandle(libc.find("write").orElseThrow(),
+                            FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG)),
+                    linker.downcallHandle(libc.find("close").orElseThrow(),
+                            FunctionDescriptor.of(JAVA_INT, JAVA_INT))
+            );
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package pulse.network;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * An {@link EventLoop} driving socket reads and writes through Linux io_uring.
+ * <p>
+ * Receives and gathering writes of all connections of the loop are queued during one iteration and submitted
+ * together with the wait for the next completions in a single {@code io_uring_enter}, the kernel copies straight
+ * from and into the pooled off-heap buffers. Every connection keeps one receive in flight,
+ * so unlike with the {@link SelectorEventLoop} idle connections hold on to their receive buffer.
+ * <p>
+ * The socket descriptor is taken from the JDK internals, which requires
+ * {@code --add-exports java.base/sun.nio.ch=ALL-UNNAMED}. Use {@link #isAvailable()} to fall back
+ * to the {@link SelectorEventLoop} otherwise, as {@link EventLoopGroup} does.
+ */
+public final class IoUringEventLoop extends EventLoop {
+    private static final int RING_ENTRIES = 4096;
+
+    // user data: slot of the connection << 8 | operation
+    private static final int OP_WAKEUP = 0, OP_RECV = 1, OP_WRITE = 2;
+
+    private static final @Nullable MethodHandle FD_VAL = findFdVal();
+
+    private final IoUring ring;
+
+    // owned by the loop thread
+    private final ArrayList<@Nullable Registration> slots = new ArrayList<>();
+    private final IntArrayList freeSlots = new IntArrayList();
+    private final IdentityHashMap<Connection, Registration> registered = new IdentityHashMap<>();
+
+    public IoUringEventLoop(String name) throws IOException {
+        super(name);
+        if (FD_VAL == null) throw new UnsupportedOperationException("sun.nio.ch is not exported");
+        this.ring = new IoUring(RING_ENTRIES);
+    }
+
+    public static boolean isAvailable() {
+        return IoUring.isAvailable() && FD_VAL != null;
+    }
+
+    @Override
+    void configure(SocketChannel channel) {
+        // stays blocking, io_uring polls the socket itself instead of failing with EAGAIN
+    }
+
+    @Override
+    void wakeupNow() {
+        ring.wakeup();
+    }
+
+    @Override
+    void loop() {
+        try {
+            ring.prepareWakeup(OP_WAKEUP);
+            while (active) {
+                ring.submit(1);
+                ring.drain(this::complete);
+
+                Connection connection;
+                while ((connection = registrations.poll()) != null) {
+                    attach(connection);
+                }
+
+                while ((connection = flushes.poll()) != null) {
+                    var registration = registered.get(connection);
+                    if (registration != null) write(registration);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void attach(Connection connection) {
+        int fd;
+        try {
+            fd = (int) FD_VAL.invoke(connection.getChannel());
+        } catch (Throwable e) {
+            connection.fail(e);
+            return;
+        }
+
+        int slot = freeSlots.isEmpty() ? slots.size() : freeSlots.popInt();
+        var registration = new Registration(connection, fd, slot);
+        if (slot == slots.size()) {
+            slots.add(registration);
+        } else {
+            slots.set(slot, registration);
+        }
+        registered.put(connection, registration);
+
+        try {
+            receive(registration);
+            write(registration);
+        } catch (Throwable e) {
+            fail(registration, e);
+        }
+    }
+
+    private void complete(long userData, int result) {
+        int op = (int) (userData & 0xFF);
+        if (op == OP_WAKEUP) {
+            wakeupPending.set(false);
+            try {
+                ring.prepareWakeup(OP_WAKEUP);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+
+        var registration = slots.get((int) (userData >>> 8));
+        if (registration == null) return;
+
+        try {
+            if (op == OP_RECV) {
+                received(registration, result);
+            } else {
+                written(registration, result);
+            }
+        } catch (Throwable e) {
+            fail(registration, e);
+        }
+        finishIfIdle(registration);
+    }
+
+    private void receive(Registration registration) throws IOException {
+        var buffer = registration.connection.receiveBuffer();
+        ring.prepare(IoUring.OP_RECV, registration.fd, buffer.segment.address() + buffer.writeIndex,
+                (int) buffer.writable(), userData(registration, OP_RECV));
+        registration.receiving = true;
+    }
+
+    private void received(Registration registration, int result) throws IOException {
+        registration.receiving = false;
+        if (registration.closing) return;
+
+        if (result <= 0) {
+            // zero is the end of the stream
+            if (result < 0) report(-result, "recv");
+            close(registration);
+            return;
+        }
+
+        registration.connection.received(result);
+        receive(registration);
+    }
+
+    private void write(Registration registration) throws IOException {
+        if (registration.writing || registration.closing) return;
+
+        var connection = registration.connection;
+        // MAX_GATHERED_BUFFERS iovecs fill exactly one pooled packet buffer
+        var iovecs = Connection.BUFFER_POOL.get();
+        int count;
+        try {
+            count = connection.gatherPending(iovecs.segment);
+        } catch (Throwable e) {
+            iovecs.release();
+            throw e;
+        }
+
+        if (count == 0) {
+            iovecs.release();
+            if (!connection.isActive()) close(registration);
+            return;
+        }
+
+        registration.iovecs = iovecs;
+        registration.writing = true;
+        ring.prepare(IoUring.OP_WRITEV, registration.fd, iovecs.segment.address(), count, userData(registration, OP_WRITE));
+    }
+
+    private void written(Registration registration, int result) throws IOException {
+        registration.writing = false;
+        var iovecs = registration.iovecs;
+        if (iovecs != null) {
+            iovecs.release();
+            registration.iovecs = null;
+        }
+        if (registration.closing) return;
+
+        if (result < 0) {
+            report(-result, "writev");
+            close(registration);
+            return;
+        }
+
+        registration.connection.written(result);
+        // continue with the rest and whatever was queued meanwhile
+        write(registration);
+    }
+
+    private void fail(Registration registration, Throwable e) {
+        Connection.report(e);
+        close(registration);
+    }
+
+    private static void report(int errno, String call) {
+        if (errno == IoUring.ECONNRESET || errno == IoUring.EPIPE) return;
+        Connection.report(IoUring.error(call, errno));
+    }
+
+    /**
+     * Shuts the socket down, so that operations still in flight complete and the connection can be detached.
+     */
+    private void close(Registration registration) {
+        if (registration.closing) return;
+        registration.closing = true;
+
+        var channel = registration.connection.getChannel();
+        try {
+            channel.shutdownInput();
+            channel.shutdownOutput();
+        } catch (IOException ignored) {
+            // already closed
+        }
+    }
+
+    private void finishIfIdle(Registration registration) {
+        if (!registration.closing || registration.receiving || registration.writing) return;
+
+        // the kernel is done with the buffers, now they can go back to their pools
+        slots.set(registration.slot, null);
+        freeSlots.add(registration.slot);
+        registered.remove(registration.connection);
+        registration.connection.detach();
+    }
+
+    private void shutdown() {
+        Connection connection;
+        while ((connection = registrations.poll()) != null) {
+            connection.detach();
+        }
+
+        for (var registration : List.copyOf(registered.values())) {
+            close(registration);
+            finishIfIdle(registration);
+        }
+
+        try {
+            while (!registered.isEmpty()) {
+                ring.submit(1);
+                ring.drain(this::complete);
+            }
+        } catch (Throwable e) {
+            // buffers of operations still in flight are never reused, they are dropped with their connections
+            //noinspection CallToPrintStackTrace
+            e.printStackTrace();
+        }
+
+        ring.close();
+    }
+
+    private static long userData(Registration registration, int op) {
+        return (long) registration.slot << 8 | op;
+    }
+
+    private static @Nullable MethodHandle findFdVal() {
+        try {
+            var type = Class.forName("sun.nio.ch.SelChImpl");
+            if (!type.getModule().isExported(type.getPackageName(), IoUringEventLoop.class.getModule())) return null;
+            return MethodHandles.lookup().findVirtual(type, "getFDVal", MethodType.methodType(int.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static final class Registration {
+        final Connection connection;
+        final int fd;
+        final int slot;
+
+        boolean receiving, writing, closing;
+        @Nullable Buffer iovecs;
+
+        Registration(Connection connection, int fd, int slot) {
+            this.connection = connection;
+            this.fd = fd;
+            this.slot = slot;
+        }
+    }
+}
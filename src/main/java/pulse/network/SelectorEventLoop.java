@@ -0,0 +1,78 @@
+package pulse.network;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * An {@link EventLoop} selecting over non-blocking channels, available on every platform.
+ * <p>
+ * Receive buffers are only borrowed while a read is in flight.
+ */
+public final class SelectorEventLoop extends EventLoop {
+    private final Selector selector;
+
+    public SelectorEventLoop(String name) throws IOException {
+        super(name);
+        this.selector = Selector.open();
+    }
+
+    @Override
+    void configure(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+    }
+
+    @Override
+    void wakeupNow() {
+        selector.wakeup();
+    }
+
+    @Override
+    void loop() {
+        try {
+            while (active) {
+                selector.select();
+                wakeupPending.set(false);
+
+                Connection connection;
+                while ((connection = registrations.poll()) != null) {
+                    connection.attach(selector);
+                }
+
+                for (var key : selector.selectedKeys()) {
+                    connection = (Connection) key.attachment();
+                    if (!key.isValid()) continue;
+
+                    if (key.isReadable()) connection.handleRead();
+                    if (key.isValid() && key.isWritable()) connection.handleWrite();
+                }
+                selector.selectedKeys().clear();
+
+                while ((connection = flushes.poll()) != null) {
+                    connection.handleWrite();
+                }
+            }
+        } catch (ClosedSelectorException ignored) {
+            // we are exiting
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).detach();
+            }
+
+            Connection connection;
+            while ((connection = registrations.poll()) != null) {
+                connection.detach();
+            }
+
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // exiting anyway
+            }
+        }
+    }
+}
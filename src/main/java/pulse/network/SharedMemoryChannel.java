@@ -0,0 +1,279 @@
+package pulse.network;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.VarHandle;
+import java.net.InetSocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * The byte streams of a same-host connection, carried by two single-producer single-consumer rings
+ * in a file both peers map, one per direction.
+ * <p>
+ * Only the connection's write thread produces and only its read thread consumes, so a ring needs nothing
+ * but a head and a tail. The socket stays open to tell when the peer is gone and to wake it:
+ * a consumer that finds its ring empty spins for a moment, then raises its waiting flag and blocks reading
+ * the socket, and a producer sends a single byte only if it sees that flag after publishing.
+ * A producer facing a full ring parks in short intervals instead, the rings are sized so that this is rare.
+ * <p>
+ * A client asks for the upgrade with a frame carrying {@link #UPGRADE_HEADER}, which no regular frame can have,
+ * followed by the name of the ring file, and waits for a one byte answer before it sends anything else.
+ */
+final class SharedMemoryChannel implements ReadableByteChannel, GatheringByteChannel {
+    static final short UPGRADE_HEADER = (short) 0xFFFF;
+    static final long DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int MAGIC = 0x50534D52; // "PSMR"
+    private static final String FILE_PREFIX = "pulse-shm-", FILE_SUFFIX = ".ring";
+    private static final Pattern FILE_NAME = Pattern.compile("pulse-shm-[0-9]+\\.ring");
+
+    // preamble: magic, capacity, then a control block for each direction, data from DATA_OFFSET on
+    private static final long CAPACITY_OFFSET = 8;
+    private static final long CLIENT_CONTROL = 64, SERVER_CONTROL = 192;
+    private static final long DATA_OFFSET = 4096;
+
+    // tail and head on their own cache lines, the waiting flag next to the consumer's head
+    private static final long TAIL = 0, HEAD = 64, WAITING = 72;
+
+    private static final int SPIN_LIMIT = 512;
+    private static final long FULL_PARK_NANOS = 20_000;
+
+    private static final VarHandle LONG_HANDLE = JAVA_LONG.varHandle();
+    private static final VarHandle INT_HANDLE = JAVA_INT.varHandle();
+
+    private final SocketChannel socket;
+    private final MemorySegment segment;
+    private final long capacity, mask;
+    private final long inControl, inData, outControl, outData;
+
+    private final ByteBuffer wakeupIn = ByteBuffer.allocate(64);
+    private final ByteBuffer wakeupOut = ByteBuffer.allocate(1);
+    private volatile boolean shutdown;
+
+    private SharedMemoryChannel(SocketChannel socket, MemorySegment segment, boolean client) {
+        this.socket = socket;
+        this.segment = segment;
+        this.capacity = segment.get(JAVA_LONG, CAPACITY_OFFSET);
+        this.mask = capacity - 1;
+
+        // the client produces into the first ring
+        long clientData = DATA_OFFSET, serverData = DATA_OFFSET + capacity;
+        this.outControl = client ? CLIENT_CONTROL : SERVER_CONTROL;
+        this.outData = client ? clientData : serverData;
+        this.inControl = client ? SERVER_CONTROL : CLIENT_CONTROL;
+        this.inData = client ? serverData : clientData;
+    }
+
+    /**
+     * Creates a ring file in {@code directory} and offers it to the peer.
+     *
+     * @return the channel, or {@code null} if the peer declined and the socket is to be used as is
+     */
+    static @Nullable SharedMemoryChannel offer(SocketChannel socket, Path directory, long capacity) throws IOException {
+        if (Long.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity must be a power of two");
+
+        var file = Files.createTempFile(directory, FILE_PREFIX, FILE_SUFFIX);
+        try {
+            MemorySegment segment;
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + 2 * capacity, Arena.ofAuto());
+            }
+            segment.set(JAVA_LONG, CAPACITY_OFFSET, capacity);
+            segment.set(JAVA_INT, 0, MAGIC);
+
+            var name = file.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+            var request = ByteBuffer.allocate(2 * Short.BYTES + name.length).order(Buffer.BYTE_ORDER);
+            request.putShort(UPGRADE_HEADER).putShort((short) name.length).put(name).flip();
+            while (request.hasRemaining()) socket.write(request);
+
+            var answer = ByteBuffer.allocate(1);
+            if (socket.read(answer) == -1) throw new EOFException("Disconnected during the shared memory handshake");
+            return answer.get(0) == 1 ? new SharedMemoryChannel(socket, segment, true) : null;
+        } finally {
+            // both sides have mapped it by now
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Maps the ring file a client offered and answers it.
+     *
+     * @param directory where ring files are accepted from, or {@code null} to decline
+     * @return the channel, or {@code null} if declined
+     */
+    static @Nullable SharedMemoryChannel accept(SocketChannel socket, @Nullable Path directory, String name) throws IOException {
+        SharedMemoryChannel result = null;
+        if (directory != null && isLocal(socket) && FILE_NAME.matcher(name).matches()) {
+            var file = directory.resolve(name);
+            if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    var size = channel.size();
+                    var segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, Arena.ofAuto());
+                    var capacity = segment.get(JAVA_LONG, CAPACITY_OFFSET);
+                    if (segment.get(JAVA_INT, 0) == MAGIC && Long.bitCount(capacity) == 1
+                            && size == DATA_OFFSET + 2 * capacity) {
+                        result = new SharedMemoryChannel(socket, segment, false);
+                    }
+                }
+            }
+        }
+
+        var answer = ByteBuffer.allocate(1).put(0, (byte) (result != null ? 1 : 0));
+        while (answer.hasRemaining()) socket.write(answer);
+        return result;
+    }
+
+    private static boolean isLocal(SocketChannel socket) throws IOException {
+        return switch (socket.getRemoteAddress()) {
+            case UnixDomainSocketAddress _ -> true;
+            case InetSocketAddress address -> address.getAddress().isLoopbackAddress();
+            default -> false;
+        };
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        var segment = this.segment;
+        long head = segment.get(JAVA_LONG, inControl + HEAD);
+
+        int spins = 0;
+        while (true) {
+            if (!socket.isOpen()) throw new ClosedChannelException();
+
+            long available = (long) LONG_HANDLE.getAcquire(segment, inControl + TAIL) - head;
+            if (available > 0) {
+                int count = (int) Math.min(available, dst.remaining());
+                copy(segment, inData, head, MemorySegment.ofBuffer(dst), count, true);
+                dst.position(dst.position() + count);
+
+                LONG_HANDLE.setRelease(segment, inControl + HEAD, head + count);
+                return count;
+            }
+
+            if (++spins < SPIN_LIMIT) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            // from now on the producer wakes us up, unless it published before it could see the flag
+            INT_HANDLE.setVolatile(segment, inControl + WAITING, 1);
+            if ((long) LONG_HANDLE.getVolatile(segment, inControl + TAIL) == head) {
+                wakeupIn.clear();
+                if (socket.read(wakeupIn) == -1) return -1;
+            }
+            INT_HANDLE.setVolatile(segment, inControl + WAITING, 0);
+            spins = 0;
+        }
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        var segment = this.segment;
+        long tail = segment.get(JAVA_LONG, outControl + TAIL);
+
+        long written = 0;
+        for (int i = offset; i < offset + length; i++) {
+            var src = srcs[i];
+            while (src.hasRemaining()) {
+                long free = capacity - (tail - (long) LONG_HANDLE.getAcquire(segment, outControl + HEAD));
+                if (free == 0) {
+                    // let the consumer drain what is there already
+                    publish(tail);
+                    awaitSpace();
+                    continue;
+                }
+
+                int count = (int) Math.min(free, src.remaining());
+                copy(segment, outData, tail, MemorySegment.ofBuffer(src), count, false);
+                src.position(src.position() + count);
+
+                tail += count;
+                written += count;
+            }
+        }
+
+        publish(tail);
+        return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[]{src}, 0, 1);
+    }
+
+    private void publish(long tail) throws IOException {
+        // volatile, so that the store of the tail cannot pass the load of the waiting flag
+        LONG_HANDLE.setVolatile(segment, outControl + TAIL, tail);
+        if ((int) INT_HANDLE.getVolatile(segment, outControl + WAITING) == 0) return;
+        if (!INT_HANDLE.compareAndSet(segment, outControl + WAITING, 1, 0)) return;
+
+        wakeupOut.clear();
+        while (wakeupOut.hasRemaining()) socket.write(wakeupOut);
+    }
+
+    private void awaitSpace() throws IOException {
+        if (shutdown || !socket.isOpen()) throw new ClosedChannelException();
+        LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Copies between the ring at {@code data} and {@code other}, wrapping around the end of the ring.
+     */
+    private void copy(MemorySegment ring, long data, long position, MemorySegment other, int count, boolean fromRing) {
+        long index = position & mask;
+        long first = Math.min(count, capacity - index);
+        if (fromRing) {
+            MemorySegment.copy(ring, data + index, other, 0, first);
+            MemorySegment.copy(ring, data, other, first, count - first);
+        } else {
+            MemorySegment.copy(other, 0, ring, data + index, first);
+            MemorySegment.copy(other, first, ring, data, count - first);
+        }
+    }
+
+    /**
+     * Stops a producer waiting for space, the connection is closing.
+     */
+    void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return socket.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,104 @@
+// https://github.com/ben-manes/caffeine/blob/v2.9.3/caffeine/src/main/java/com/github/benmanes/caffeine/cache/FrequencySketch.java
+//
+// Copyright 2015 Ben Manes. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// Changed from the original: keyed by a precomputed hash and sized once by the expected number of keys.
+
+package pulse.util;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often keys were seen recently, for cache admission.
+ * <p>
+ * Every key has four counters, its frequency is the smallest of them. All counters are halved once ten
+ * increments per table slot happened, i.e. {@code 10 * table.length} where each slot is a long packing sixteen
+ * counters, so that old popularity fades. Increments that found all four counters saturated are not counted.
+ * Not thread-safe.
+ *
+ * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a>
+ */
+public final class FrequencySketch {
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAX_COUNT = 15;
+
+    // sixteen counters per long
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    public FrequencySketch(int expectedKeys) {
+        int length = Integer.highestOneBit(Math.clamp(expectedKeys, 16, 1 << 24) - 1) << 1;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    public int frequency(int hash) {
+        int spread = spread(hash);
+        int start = (spread & 3) << 2;
+
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            int offset = (start + i) << 2;
+            int count = (int) ((table[indexOf(spread, i)] >>> offset) & MAX_COUNT);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    public void increment(int hash) {
+        int spread = spread(hash);
+        int start = (spread & 3) << 2;
+
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(spread, i), (start + i) << 2);
+        }
+
+        if (added && ++size == sampleSize) reset();
+    }
+
+    private boolean incrementAt(int index, int offset) {
+        long mask = (long) MAX_COUNT << offset;
+        if ((table[index] & mask) == mask) return false;
+
+        table[index] += 1L << offset;
+        return true;
+    }
+
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        // halving rounds odd counters down
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int spread, int row) {
+        long hash = (spread + SEEDS[row]) * SEEDS[row];
+        hash += hash >>> 32;
+        return (int) hash & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,179 @@
+package pulse.util;
+
+import org.jctools.queues.MpscUnboundedXaddArrayQueue;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel for large numbers of short timeouts that are mostly cancelled before they expire.
+ * <p>
+ * Scheduling and cancelling are a queue offer and a CAS, a single daemon thread moves new timeouts into
+ * their bucket and expires a bucket per tick. Expiry is only as precise as the tick and tasks run on the
+ * wheel thread, so they must be short.
+ *
+ * @see <a href="http://www.cs.columbia.edu/~nahum/w6998/papers/sosp87-timing-wheels.pdf">Hashed and Hierarchical Timing Wheels</a>
+ */
+public final class TimerWheel implements AutoCloseable {
+    private static final int QUEUE_CHUNK_SIZE = 1024;
+
+    private static final class Shared {
+        private static final TimerWheel INSTANCE = new TimerWheel(1, TimeUnit.MILLISECONDS, 512, "pulse-timer");
+    }
+
+    /**
+     * A wheel with a tick of one millisecond shared by all clients and servers.
+     */
+    public static TimerWheel shared() {
+        return Shared.INSTANCE;
+    }
+
+    private final long tickNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final MpscUnboundedXaddArrayQueue<Timeout> added = new MpscUnboundedXaddArrayQueue<>(QUEUE_CHUNK_SIZE);
+    private final Thread thread;
+    private final long startTime;
+
+    private volatile boolean active = true;
+
+    public TimerWheel(long tick, TimeUnit unit, int wheelSize, String name) {
+        if (tick <= 0) throw new IllegalArgumentException("tick <= 0");
+        if (wheelSize < 1 || Integer.bitCount(wheelSize) != 1)
+            throw new IllegalArgumentException("wheelSize must be a power of two");
+
+        this.tickNanos = unit.toNanos(tick);
+        this.buckets = new Timeout[wheelSize];
+        for (int i = 0; i < wheelSize; i++) buckets[i] = new Timeout(this, null, 0);
+        this.mask = wheelSize - 1;
+
+        this.startTime = System.nanoTime();
+        this.thread = Thread.ofPlatform().name(name).daemon().start(this::loop);
+    }
+
+    /**
+     * Runs {@code task} on the wheel thread after {@code delay}, unless the timeout is cancelled first.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        var timeout = new Timeout(this, task, System.nanoTime() + unit.toNanos(delay));
+        added.relaxedOffer(timeout);
+        return timeout;
+    }
+
+    private void loop() {
+        long tick = 0;
+        while (active) {
+            long deadline = startTime + (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleep);
+                if (!active) return;
+            }
+
+            transferAdded(tick);
+            expire(buckets[(int) (tick & mask)], deadline);
+            tick++;
+        }
+    }
+
+    private void transferAdded(long currentTick) {
+        Timeout timeout;
+        while ((timeout = added.relaxedPoll()) != null) {
+            if (timeout.state != Timeout.PENDING) continue;
+
+            long ticks = Math.max(currentTick, (timeout.deadline - startTime) / tickNanos);
+            timeout.rounds = (ticks - currentTick) / buckets.length;
+            buckets[(int) (ticks & mask)].append(timeout);
+        }
+    }
+
+    private void expire(Timeout bucket, long now) {
+        var timeout = bucket.next;
+        while (timeout != bucket) {
+            var next = timeout.next;
+            if (timeout.state != Timeout.PENDING) {
+                timeout.unlink();
+            } else if (timeout.rounds <= 0 && timeout.deadline <= now) {
+                timeout.unlink();
+                timeout.expire();
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    @Override
+    public void close() {
+        active = false;
+        LockSupport.unpark(thread);
+    }
+
+    public static final class Timeout {
+        private static final int PENDING = 0, CANCELLED = 1, EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final TimerWheel wheel;
+        private final @Nullable Runnable task;
+        private final long deadline;
+        private volatile int state = PENDING;
+
+        // owned by the wheel thread, buckets are circular lists around a sentinel
+        private long rounds;
+        private Timeout next = this, previous = this;
+
+        private Timeout(TimerWheel wheel, @Nullable Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return whether the task will not run, {@code false} if it already ran or is running
+         */
+        public boolean cancel() {
+            // unlinked lazily by the wheel thread
+            return STATE.compareAndSet(this, PENDING, CANCELLED) || state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        public long remaining(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        private void expire() {
+            if (!STATE.compareAndSet(this, PENDING, EXPIRED)) return;
+            try {
+                assert task != null;
+                task.run();
+            } catch (Throwable e) {
+                //noinspection CallToPrintStackTrace
+                e.printStackTrace();
+            }
+        }
+
+        private void append(Timeout timeout) {
+            timeout.previous = previous;
+            timeout.next = this;
+            previous.next = timeout;
+            previous = timeout;
+        }
+
+        private void unlink() {
+            previous.next = next;
+            next.previous = previous;
+            next = previous = this;
+        }
+
+        @Override
+        public String toString() {
+            return "Timeout{wheel=" + wheel.thread.getName() + ", remaining=" + remaining(TimeUnit.MICROSECONDS) + "us}";
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package pulse.test;
+
+import com.sun.management.ThreadMXBean;
+import pulse.PulseClient;
+import pulse.PulseServer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes the calling thread allocates per blocking call, which should be close to zero.
+ */
+public final class AllocationBenchmark {
+    private static final int ITERATIONS = 1_000_000;
+
+    public static void main(String[] args) throws IOException {
+        final PulseServer server = new PulseServer(6973);
+        server.export(0x01, MathService.class, MathServiceImpl::new);
+        server.run();
+
+        final PulseClient client = new PulseClient();
+        client.connect(6973);
+
+        var mathService = client.use(0x01, MathService.class);
+        for (int i = 0; i < ITERATIONS / 4; i++) mathService.sum(i, i); // warmup
+
+        var threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) mathService.sum(i, i);
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+        System.out.printf("%,.1f B/op  %,.0f ops/s%n", (double) allocated / ITERATIONS, ITERATIONS * 1e9 / elapsed);
+
+        client.close();
+        client.await();
+        server.close();
+    }
+}
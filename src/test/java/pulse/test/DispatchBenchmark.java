@@ -0,0 +1,88 @@
+package pulse.test;
+
+import pulse.Execution;
+import pulse.PulseClient;
+import pulse.PulseServer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Round trip latency of a trivial method for each {@link Execution.Mode}, which differ only in how the server
+ * hands the call to the method.
+ */
+public final class DispatchBenchmark {
+    private static final int ITERATIONS = 200_000;
+
+    public interface DispatchService {
+        @Execution(Execution.Mode.INLINE)
+        int inline(int value);
+
+        @Execution(Execution.Mode.VIRTUAL_THREAD)
+        int virtualThread(int value);
+
+        @Execution(value = Execution.Mode.POOL, executor = "cpu")
+        int pool(int value);
+    }
+
+    public static final class DispatchServiceImpl implements DispatchService {
+        @Override
+        public int inline(int value) {
+            return value + 1;
+        }
+
+        @Override
+        public int virtualThread(int value) {
+            return value + 1;
+        }
+
+        @Override
+        public int pool(int value) {
+            return value + 1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        // latencies mean little without the machine they were taken on
+        System.out.printf("JDK %s, %d cores%n", Runtime.version(), Runtime.getRuntime().availableProcessors());
+
+        final ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        final PulseServer server = new PulseServer(6974);
+        server.registerExecutor("cpu", pool);
+        server.export(0x01, DispatchService.class, DispatchServiceImpl::new);
+        server.run();
+
+        final PulseClient client = new PulseClient();
+        client.connect(6974);
+
+        var service = client.use(0x01, DispatchService.class);
+        measure("inline", service::inline);
+        measure("virtual thread", service::virtualThread);
+        measure("pool", service::pool);
+
+        client.close();
+        client.await();
+        server.close();
+        pool.shutdown();
+    }
+
+    private static void measure(String name, IntUnaryOperator call) {
+        for (int i = 0; i < ITERATIONS / 4; i++) call.applyAsInt(i); // warmup
+
+        var latencies = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            call.applyAsInt(i);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("%-15s avg %,6.1f us  p50 %,6.1f us  p99 %,6.1f us%n", name,
+                Arrays.stream(latencies).average().orElse(0) / 1e3,
+                latencies[ITERATIONS / 2] / 1e3, latencies[ITERATIONS * 99 / 100] / 1e3);
+    }
+}
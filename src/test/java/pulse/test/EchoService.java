@@ -0,0 +1,5 @@
+package pulse.test;
+
+public interface EchoService {
+    byte[] echo(byte[] payload);
+}
@@ -0,0 +1,8 @@
+package pulse.test;
+
+public final class EchoServiceImpl implements EchoService {
+    @Override
+    public byte[] echo(byte[] payload) {
+        return payload;
+    }
+}
@@ -0,0 +1,81 @@
+package pulse.test;
+
+import org.jetbrains.annotations.Nullable;
+import pulse.FairScheduler;
+import pulse.PulseClient;
+import pulse.PulseServer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Latency of a well-behaved connection while another one floods the server, without and with a {@link FairScheduler}.
+ */
+public final class FairnessBenchmark {
+    private static final int NOISY_THREADS = 512;
+    private static final int QUIET_CALLS = 20_000;
+    private static final int WORK_MICROS = 50;
+
+    public interface WorkService {
+        int work(int micros);
+    }
+
+    public static final class WorkServiceImpl implements WorkService {
+        @Override
+        public int work(int micros) {
+            long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+            int spins = 0;
+            while (System.nanoTime() < end) spins++;
+            return spins;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        run("arrival order", null);
+        run("fair scheduler", new FairScheduler(Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static void run(String name, @Nullable FairScheduler scheduler) throws IOException, InterruptedException {
+        final PulseServer server = new PulseServer(6975);
+        server.setScheduler(scheduler);
+        server.export(0x01, WorkService.class, WorkServiceImpl::new);
+        server.run();
+
+        final PulseClient noisy = new PulseClient();
+        noisy.connect(6975);
+        final PulseClient quiet = new PulseClient();
+        quiet.connect(6975);
+
+        var noisyService = noisy.use(0x01, WorkService.class);
+        var quietService = quiet.use(0x01, WorkService.class);
+
+        var running = new AtomicBoolean(true);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < NOISY_THREADS; i++) {
+                executor.submit(() -> {
+                    while (running.get()) noisyService.work(WORK_MICROS);
+                });
+            }
+
+            var latencies = new long[QUIET_CALLS];
+            for (int i = 0; i < QUIET_CALLS; i++) {
+                long start = System.nanoTime();
+                quietService.work(WORK_MICROS);
+                latencies[i] = System.nanoTime() - start;
+            }
+            running.set(false);
+
+            Arrays.sort(latencies);
+            System.out.printf("%-15s quiet p50 %,8.1f us  p99 %,8.1f us%n", name,
+                    latencies[QUIET_CALLS / 2] / 1e3, latencies[QUIET_CALLS * 99 / 100] / 1e3);
+        }
+
+        noisy.close();
+        quiet.close();
+        server.close();
+        server.await();
+    }
+}
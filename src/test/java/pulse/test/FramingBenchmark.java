@@ -0,0 +1,43 @@
+package pulse.test;
+
+import pulse.PulseClient;
+import pulse.PulseServer;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+public final class FramingBenchmark {
+    private static final int[] PAYLOAD_SIZES = {1024, 64 * 1024, 16 * 1024 * 1024};
+    private static final long BYTES_PER_RUN = 256L * 1024 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        final PulseServer server = new PulseServer(6970);
+        server.export(0x03, EchoService.class, EchoServiceImpl::new);
+        server.run();
+
+        final PulseClient client = new PulseClient();
+        client.connect(6970);
+
+        var echoService = client.use(0x03, EchoService.class);
+
+        for (int size : PAYLOAD_SIZES) {
+            var payload = new byte[size];
+            ThreadLocalRandom.current().nextBytes(payload);
+
+            int iterations = (int) Math.max(16, BYTES_PER_RUN / size);
+            for (int i = 0; i < iterations / 4; i++) echoService.echo(payload); // warmup
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) echoService.echo(payload);
+            long elapsed = System.nanoTime() - start;
+
+            double seconds = elapsed / 1e9;
+            double mebibytes = 2.0 * size * iterations / (1024 * 1024); // request + response
+            System.out.printf("%,10d B: %,12.0f calls/s %,10.1f MiB/s%n", size, iterations / seconds, mebibytes / seconds);
+        }
+
+        client.close();
+        server.close();
+        client.await();
+    }
+}
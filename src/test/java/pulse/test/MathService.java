@@ -1,9 +1,23 @@
 package pulse.test;
 
+import pulse.Cached;
+import pulse.OneWay;
+import pulse.SingleFlight;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 public interface MathService {
     int sum(int a, int b);
 
+    CompletableFuture<Integer> sumAsync(int a, int b);
+
+    @Cached(value = 5, unit = TimeUnit.SECONDS)
     int div(DivideRequest request);
 
+    @SingleFlight
     int[] unite(int a, int b);
+
+    @OneWay
+    void record(int value);
 }
@@ -1,11 +1,18 @@
 package pulse.test;
 
+import java.util.concurrent.CompletableFuture;
+
 public final class MathServiceImpl implements MathService {
     @Override
     public int sum(int a, int b) {
         return a + b;
     }
 
+    @Override
+    public CompletableFuture<Integer> sumAsync(int a, int b) {
+        return CompletableFuture.completedFuture(a + b);
+    }
+
     @Override
     public int div(DivideRequest request) {
         return request.dividend() / request.divisor();
@@ -15,4 +22,9 @@ public final class MathServiceImpl implements MathService {
     public int[] unite(int a, int b) {
         return new int[]{a, b};
     }
+
+    @Override
+    public void record(int value) {
+        System.out.println("Recorded " + value);
+    }
 }
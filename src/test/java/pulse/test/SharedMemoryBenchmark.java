@@ -0,0 +1,48 @@
+package pulse.test;
+
+import pulse.PulseClient;
+import pulse.PulseServer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public final class SharedMemoryBenchmark {
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) throws IOException {
+        final Path directory = Path.of(System.getProperty("java.io.tmpdir"));
+
+        final PulseServer server = new PulseServer(6972);
+        server.export(0x01, MathService.class, MathServiceImpl::new);
+        server.setSharedMemoryDirectory(directory);
+        server.run();
+
+        for (boolean sharedMemory : new boolean[]{false, true}) {
+            final PulseClient client = new PulseClient();
+            if (sharedMemory) client.setSharedMemoryDirectory(directory);
+            client.connect(6972);
+
+            var mathService = client.use(0x01, MathService.class);
+            for (int i = 0; i < ITERATIONS / 4; i++) mathService.sum(i, i); // warmup
+
+            var latencies = new long[ITERATIONS];
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                mathService.sum(i, i);
+                latencies[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(latencies);
+
+            var connection = client.getConnection();
+            System.out.printf("%-13s p50 %,8.1f us  p99 %,8.1f us%n",
+                    connection != null && connection.isSharedMemory() ? "shared memory" : "socket",
+                    latencies[ITERATIONS / 2] / 1e3, latencies[ITERATIONS * 99 / 100] / 1e3);
+
+            client.close();
+            client.await();
+        }
+
+        server.close();
+    }
+}
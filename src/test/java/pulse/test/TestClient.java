@@ -1,13 +1,17 @@
 package pulse.test;
 
+import pulse.NearCache;
 import pulse.PulseClient;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 public final class TestClient {
     public static void main(String[] args) throws IOException {
         final PulseClient client = new PulseClient();
+        client.setNearCache(new NearCache(1 << 20));
 
         client.connect(6969);
         Runtime.getRuntime().addShutdownHook(new Thread(client::close, "pulse-client-shutdown-hook"));
@@ -20,6 +24,21 @@ public final class TestClient {
 
         var div = mathService.div(new DivideRequest(6, 2));
         System.out.println(div);
+        // answered by the near cache
+        System.out.println(mathService.div(new DivideRequest(6, 2)) + ", hits: " + client.getNearCache().getHits());
+
+        mathService.record(42);
+
+        mathService.sumAsync(2, 3).thenAccept(System.out::println).join();
+
+        var batch = client.batch();
+        var sums = new ArrayList<CompletableFuture<Integer>>();
+        for (int i = 0; i < 20; i++) {
+            final int a = i;
+            sums.add(batch.add(() -> mathService.sumAsync(a, a)));
+        }
+        batch.send().join();
+        System.out.println(sums.stream().map(CompletableFuture::join).toList());
 
         var concatenated = stringService.concat("hello", "world");
         System.out.println(concatenated);
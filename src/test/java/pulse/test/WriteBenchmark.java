@@ -0,0 +1,69 @@
+package pulse.test;
+
+import pulse.PulseClient;
+import pulse.PulseServer;
+import pulse.network.FlushPolicy;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public final class WriteBenchmark {
+    private static final int THREADS = 256;
+    private static final int CALLS_PER_THREAD = 10_000;
+
+    private static final List<FlushPolicy> FLUSH_POLICIES = List.of(
+            FlushPolicy.IMMEDIATE,
+            FlushPolicy.delay(20, TimeUnit.MICROSECONDS),
+            FlushPolicy.bytes(8192, 100, TimeUnit.MICROSECONDS)
+    );
+
+    public static void main(String[] args) throws IOException {
+        // syscall counts depend on the machine, e.g. how fast the server drains the socket
+        System.out.printf("JDK %s, %d cores%n", Runtime.version(), Runtime.getRuntime().availableProcessors());
+
+        final PulseServer server = new PulseServer(6971);
+        server.export(0x01, MathService.class, MathServiceImpl::new);
+        server.run();
+
+        final PulseClient client = new PulseClient();
+        client.connect(6971);
+
+        var mathService = client.use(0x01, MathService.class);
+        var connection = Objects.requireNonNull(client.getConnection());
+
+        for (var flushPolicy : FLUSH_POLICIES) {
+            client.setFlushPolicy(flushPolicy);
+
+            long syscallsBefore = connection.getWriteSyscalls();
+            long packetsBefore = connection.getWrittenPackets();
+            long start = System.nanoTime();
+
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < THREADS; i++) {
+                    executor.submit(() -> {
+                        for (int j = 0; j < CALLS_PER_THREAD; j++) mathService.sum(j, 1);
+                    });
+                }
+            }
+
+            long elapsed = System.nanoTime() - start;
+            long calls = (long) THREADS * CALLS_PER_THREAD;
+            long syscalls = connection.getWriteSyscalls() - syscallsBefore;
+            long packets = connection.getWrittenPackets() - packetsBefore;
+
+            System.out.println(flushPolicy);
+            System.out.printf("  %,d calls in %,d ms: %,.0f calls/s%n", calls, elapsed / 1_000_000, calls / (elapsed / 1e9));
+            System.out.printf("  client write syscalls per 1000 calls: %.1f (%.1f packets per syscall)%n",
+                    syscalls * 1000.0 / calls, (double) packets / Math.max(1, syscalls));
+        }
+
+        System.out.printf("server flushes per response: %.3f%n", server.getFlushesPerResponse());
+
+        client.close();
+        server.close();
+        client.await();
+    }
+}